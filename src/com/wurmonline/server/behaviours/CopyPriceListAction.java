@@ -3,11 +3,11 @@ package com.wurmonline.server.behaviours;
 import com.wurmonline.server.FailedException;
 import com.wurmonline.server.Items;
 import com.wurmonline.server.creatures.Creature;
-import com.wurmonline.server.creatures.CreatureTemplateIds;
 import com.wurmonline.server.creatures.Creatures;
 import com.wurmonline.server.economy.Shop;
 import com.wurmonline.server.items.Item;
 import com.wurmonline.server.items.NoSuchTemplateException;
+import mod.wurmunlimited.buyermerchant.BuyerRegistry;
 import mod.wurmunlimited.buyermerchant.PriceList;
 import org.gotti.wurmunlimited.modsupport.actions.*;
 
@@ -80,6 +80,7 @@ public class CopyPriceListAction implements ModAction, ActionPerformer, Behaviou
                                         e.printStackTrace();
                                         return true;
                                     }
+                                    PriceList.invalidate(toReplace);
                                     Items.destroyItem(toReplace.getWurmId());
                                     performer.getCommunicator().sendNormalServerMessage(otherBuyer.getName() + " successfully copied " + buyer.getName() + "'s price list.");
                                     return true;
@@ -98,7 +99,7 @@ public class CopyPriceListAction implements ModAction, ActionPerformer, Behaviou
     }
 
     static boolean isBuyer(Creature maybeBuyer) {
-        return maybeBuyer.getName().startsWith("Buyer_") && maybeBuyer.getTemplate().id == CreatureTemplateIds.SALESMAN_CID;
+        return BuyerRegistry.isBuyer(maybeBuyer);
     }
 
     @Override
@@ -27,13 +27,29 @@ public class BuyerHandler extends TradeHandler implements MiscConstants, ItemTyp
     private boolean balanced = false;
     private boolean waiting = false;
     public static int maxPersonalItems = 51;
+    // Milliseconds to wait after the last change to the trade before balancing, so a burst of changes is only evaluated once.
+    public static long balanceDelay = 0;
+    private long lastChange = 0;
     private final Shop shop;
     private final boolean ownerTrade;
     private PriceList priceList;
     private Map<PriceList.Entry, MinimumRequired> minimumRequiredMap = new HashMap<>();
+    // Items in the request window because of a minimum requirement, evaluated again on each balance.
+    private final Set<Item> minimumAccepted = new HashSet<>();
+    private final BuyerMessages messages = new BuyerMessages();
+    // Prices worked out during this trade.  Cleared if the price list changes.
+    private TradePrices prices;
+    // Delivery contracts seen during this trade, by WurmId.
+    private final Map<Long, ContractContents> contracts = new HashMap<>();
+    private int priceListModifications;
+    // Items in the buyer's request window and their prices, kept up to date by BuyerTradingWindow.
+    private final Map<Item, Integer> acceptedPrices = new HashMap<>();
+    private int acceptedTotal = 0;
+    // The buyer's inventory does not change during a trade, so it is only counted once.
+    private int inventoryItems = -1;
     private static int deliveryContractId = -10;
-    private static final int unauthorisedItem = 1;
-    private static final int notFullWeight = 2;
+    static final int unauthorisedItem = 1;
+    static final int notFullWeight = 2;
 
     public BuyerHandler(Creature aCreature, Trade _trade) throws PriceList.NoPriceListOnBuyer {
         this.creature = aCreature;
@@ -54,13 +70,19 @@ public class BuyerHandler extends TradeHandler implements MiscConstants, ItemTyp
             }
         }
         priceList = PriceList.getPriceListFromBuyer(this.creature);
+        priceList.tradeStarted();
+        priceListModifications = priceList.getModificationCount();
+        prices = new TradePrices(priceList);
     }
 
     @Override
     void end() {
         this.creature = null;
         this.trade = null;
-        priceList.destroyItems();
+        // The price list keeps its TempItems for the next trade, they are destroyed once it is replaced and no trades
+        // are still showing them.
+        if (priceList != null)
+            priceList.tradeEnded();
         priceList = null;
     }
 
@@ -92,6 +114,8 @@ public class BuyerHandler extends TradeHandler implements MiscConstants, ItemTyp
     void tradeChanged() {
         this.balanced = false;
         this.waiting = false;
+        if (balanceDelay > 0)
+            this.lastChange = System.currentTimeMillis();
     }
 
     @Override
@@ -123,57 +147,99 @@ public class BuyerHandler extends TradeHandler implements MiscConstants, ItemTyp
 
     @Override
     public int getTraderBuyPriceForItem(Item item) {
-        PriceList.Entry entry = priceList.getEntryFor(item);
-        if (entry == null)
-            return 0;
-        return getTraderBuyPriceForItem(entry, item);
+        checkPriceListUnchanged();
+        return prices.getPrice(item);
     }
 
-    private int getTraderBuyPriceForItem(PriceList.Entry entry, Item item) {
-        int markedPrice = 0;
-
-        if (item.getDamage() != 0) {
-            return markedPrice;
+    private void checkPriceListUnchanged() {
+        int modifications = priceList.getModificationCount();
+        if (modifications != priceListModifications) {
+            priceListModifications = modifications;
+            prices.clear();
+            contracts.clear();
+            acceptedTotal = 0;
+            for (Map.Entry<Item, Integer> accepted : acceptedPrices.entrySet()) {
+                int price = getTraderBuyPriceForItem(accepted.getKey());
+                accepted.setValue(price);
+                acceptedTotal += price;
+            }
         }
+    }
 
-        markedPrice = entry.getPrice();
+    /**
+     * Called when an item is added to or removed from the player's offer window.
+     */
+    public void offerWindowChanged() {
+        messages.offerChanged();
+    }
+
+    /**
+     * Keeps the running total of the buyer's request window, so balancing does not need to price every item again.
+     */
+    public void requestWindowChanged(Item item, boolean added) {
+        if (priceList == null)
+            return;
+        if (added) {
+            int price = getTraderBuyPriceForItem(item);
+            Integer previous = acceptedPrices.put(item, price);
+            acceptedTotal += price - (previous != null ? previous : 0);
+        } else {
+            Integer price = acceptedPrices.remove(item);
+            if (price != null)
+                acceptedTotal -= price;
+        }
+    }
 
-        // Could be 0 or unauthorised.
-        if (markedPrice < 1)
-            return markedPrice;
+    /**
+     * The item's details changed while in a window, so its price may have too.
+     */
+    public void itemChanged(Item item) {
+        if (priceList == null)
+            return;
+        if (acceptedPrices.containsKey(item))
+            requestWindowChanged(item, true);
+    }
 
-        float weightRatio = ((float)item.getWeightGrams()) / ((float)item.getTemplate().getWeightGrams());
+    /**
+     * @return What the buyer is paying for an item in its request window.  Items inside a delivery contract are each
+     * paid for at their QL price, as the contract is priced in ContractContents.
+     */
+    public int getAcceptedPrice(Item item) {
+        if (priceList == null)
+            return 0;
+        checkPriceListUnchanged();
+        Integer price = acceptedPrices.get(item);
+        if (price != null)
+            return price;
+        PriceList.Entry entry = prices.getEntry(item);
+        return entry == null ? 0 : entry.getPrice(item.getQualityLevel());
+    }
 
-        return Math.max(0, (int)(markedPrice * weightRatio));
+    public static boolean isDeliveryContract(Item item) {
+        return item.getTemplateId() == deliveryContractId;
     }
 
     private int addContractToMinimumRequirement(Item contract) {
         assert contract.getTemplateId() == deliveryContractId;
 
-        Map<PriceList.Entry, Integer> entries = new HashMap<>();
-
-        for (Item item : contract.getItems()) {
-            // TODO - More performant way to check?  What about ql differences?
-            PriceList.Entry entry = priceList.getEntryFor(item);
-            if (entry == null) {
-                return unauthorisedItem;
-            }
-            if (entry.getMinimumPurchase() != 1 && item.getWeightGrams() < item.getTemplate().getWeightGrams()) {
-                return notFullWeight;
-            }
-
-            entries.merge(entry, 1, Integer::sum);
+        long signature = ContractContents.getSignature(contract);
+        ContractContents contents = contracts.get(contract.getWurmId());
+        if (contents == null || contents.signature != signature) {
+            contents = new ContractContents(contract, signature, prices);
+            contracts.put(contract.getWurmId(), contents);
         }
+        if (contents.result != 0)
+            return contents.result;
 
-        ContractMinimum prices = new ContractMinimum(contract, entries);
-        for (PriceList.Entry entry : prices.getLinked()) {
+        ContractMinimum minimumSet = new ContractMinimum(contract, contents.entries, contents.price);
+        for (PriceList.Entry entry : minimumSet.getLinked()) {
             MinimumRequired minimum = minimumRequiredMap.get(entry);
             if (minimum == null) {
                 minimum = new MinimumRequired(entry);
                 minimumRequiredMap.put(entry, minimum);
             }
 
-            minimum.addItem(prices);
+            minimum.addItem(minimumSet);
         }
 
         return 0;
@@ -187,21 +253,27 @@ public class BuyerHandler extends TradeHandler implements MiscConstants, ItemTyp
         TradingWindow offeredWindow = this.trade.getTradingWindow(2L);
         TradingWindow targetWindow = this.trade.getTradingWindow(4L);
 
-        // Reset minimumRequiredMap items for easier adding of new items that match the Entry.
-        if (!minimumRequiredMap.isEmpty()) {
+        // Items accepted for a minimum requirement last time stay in the window while they are evaluated again, so
+        // only items whose acceptance changes are moved.  If the price list changed they are all moved back instead.
+        Set<Item> retained = new HashSet<>();
+        if (!minimumAccepted.isEmpty()) {
             Set<Item> items = new HashSet<>(Arrays.asList(targetWindow.getItems()));
+            boolean priceListChanged = priceList.getModificationCount() != priceListModifications;
 
-            for (MinimumRequired minimum : minimumRequiredMap.values()) {
-                for (Item item : minimum.getItems()) {
-                    if (items.contains(item)) {
+            for (Item item : minimumAccepted) {
+                if (items.contains(item)) {
+                    if (priceListChanged) {
                         targetWindow.removeItem(item);
                         offeredWindow.addItem(item);
+                    } else {
+                        retained.add(item);
                     }
                 }
             }
 
-            minimumRequiredMap.clear();
+            minimumAccepted.clear();
         }
+        minimumRequiredMap.clear();
 
         Item[] offeredItems = offeredWindow.getItems();
         Item[] alreadyAcceptedItems = targetWindow.getItems();
@@ -220,23 +292,30 @@ public class BuyerHandler extends TradeHandler implements MiscConstants, ItemTyp
 
             return 0;
         } else {
-            int size = 0;
+            int size;
             int totalPrice;
 
             // This is correct for buyer as TradeHandler gets current total from window 1.
-            for (Item item : this.creature.getInventory().getItems()) {
-                // Removed PriceList check to save doing it on every item.
-                // Also with the max_items option it already accounts for it.
-                if (!item.isCoin()) {
-                    ++size;
+            if (inventoryItems == -1) {
+                inventoryItems = 0;
+                for (Item item : this.creature.getInventory().getItems()) {
+                    // Removed PriceList check to save doing it on every item.
+                    // Also with the max_items option it already accounts for it.
+                    if (!item.isCoin()) {
+                        ++inventoryItems;
+                    }
                 }
             }
+            size = inventoryItems;
 
-            size += alreadyAcceptedItems.length;
-            totalPrice = Arrays.stream(alreadyAcceptedItems).mapToInt(this::getTraderBuyPriceForItem).sum();
+            size += alreadyAcceptedItems.length - retained.size();
+            checkPriceListUnchanged();
+            totalPrice = acceptedTotal;
+            for (Item item : retained)
+                totalPrice -= acceptedPrices.getOrDefault(item, 0);
 
             if (size >= maxPersonalItems) {
-                this.trade.creatureOne.getCommunicator().sendNormalServerMessage(this.creature.getName() + " says, 'I cannot add more items to my stock right now.'");
+                messages.addNormal("I cannot add more items to my stock right now.");
             } else {
                 boolean anyNotAuthorised = false;
                 boolean anyDamaged = false;
@@ -245,14 +324,17 @@ public class BuyerHandler extends TradeHandler implements MiscConstants, ItemTyp
                 boolean personalItemsFull = false;
                 targetWindow.startReceivingItems();
 
-                for (Item offeredItem : offeredItems) {
+                // Retained items first, so they are always evaluated before running out of space.
+                List<Item> candidates = new ArrayList<>(retained);
+                candidates.addAll(Arrays.asList(offeredItems));
+                for (Item offeredItem : candidates) {
                     if (size < maxPersonalItems) {
                         if (offeredItem.getDamage() > 0) {
                             anyDamaged = true;
                         } else if (offeredItem.isLockable() && offeredItem.isLocked()) {
                             anyLocked = true;
                         } else if ((offeredItem.isHollow() && !offeredItem.isEmpty(true)) || offeredItem.isSealedByPlayer()) {
-                            this.trade.creatureOne.getCommunicator().sendSafeServerMessage(this.creature.getName() + " says, 'Please empty the " + offeredItem.getName() + " first.'");
+                            messages.addToGroup(BuyerMessages.empty, offeredItem.getName());
                         } else if (offeredItem.getTemplateId() == deliveryContractId) {
                             int contractResult = addContractToMinimumRequirement(offeredItem);
                             if (contractResult == unauthorisedItem) {
@@ -262,9 +344,9 @@ public class BuyerHandler extends TradeHandler implements MiscConstants, ItemTyp
                             }
                         }
                         else if (!offeredItem.isCoin()) {
-                            PriceList.Entry entry = priceList.getEntryFor(offeredItem);
+                            PriceList.Entry entry = prices.getEntry(offeredItem);
                             if (entry != null) {
-                                int price = getTraderBuyPriceForItem(entry, offeredItem);
+                                int price = prices.getPrice(offeredItem);
                                 if (price != PriceList.unauthorised) {
                                     if (entry.getMinimumPurchase() != 1) {
                                         if (offeredItem.getWeightGrams() == offeredItem.getTemplate().getWeightGrams()) {
@@ -280,7 +362,7 @@ public class BuyerHandler extends TradeHandler implements MiscConstants, ItemTyp
                                         }
                                     } else {
                                         if (price == 0) {
-                                            this.trade.creatureOne.getCommunicator().sendSafeServerMessage(this.creature.getName() + " says, 'I will not pay you anything, but will accept the " + offeredItem.getName() + " as a donation.'");
+                                            messages.addToGroup(BuyerMessages.donation, offeredItem.getName());
                                         }
                                         Item parent = offeredItem;
 
@@ -332,42 +414,51 @@ public class BuyerHandler extends TradeHandler implements MiscConstants, ItemTyp
 
                             int numberRequired = entry.getMinimumPurchase() - count;
                             ItemTemplate template = entry.getItem().getTemplate();
-                            this.trade.creatureOne.getCommunicator().sendSafeServerMessage(this.creature.getName() + " says, 'I will need " + numberRequired + " more " + (numberRequired == 1 ? template.getName() : template.getPlural()) + " in order to accept them.'");
+                            messages.addToGroup(BuyerMessages.moreRequired, numberRequired + " more " + (numberRequired == 1 ? template.getName() : template.getPlural()));
                         }
 
                         entries.remove(entry);
                     }
 
-                    List<PriceList.Entry> accepted = new LinkedList<>();
-                    invalidSets = new HashSet<>();
-                    int itemCount = size;
+                    List<PriceList.Entry> accepted;
+                    MinimumSolver solver = new MinimumSolver(minimumRequiredMap, confirmed);
+                    if (solver.solve(maxPersonalItems - size)) {
+                        accepted = solver.getAccepted();
+                        if (solver.anyLeftOut())
+                            personalItemsFull = true;
+                    } else {
+                        // Too many combinations to check in time, so fill the entries in order instead.
+                        accepted = new LinkedList<>();
+                        invalidSets = new HashSet<>();
+                        int itemCount = size;
 
-                    while (confirmed.size() > 0) {
-                        PriceList.Entry entry = confirmed.get(0);
-                        MinimumRequired minimumRequired = minimumRequiredMap.get(entry);
-                        minimumRequired.removeInvalidSets(invalidSets);
+                        while (confirmed.size() > 0) {
+                            PriceList.Entry entry = confirmed.get(0);
+                            MinimumRequired minimumRequired = minimumRequiredMap.get(entry);
+                            minimumRequired.removeInvalidSets(invalidSets);
 
-                        if (itemCount + minimumRequired.itemCount() <= maxPersonalItems) {
-                            accepted.add(entry);
-                            itemCount += minimumRequired.itemCount();
-                        } else {
-                            // Optimise set attempt
-                            // One drawback, if set entry is removed later it won't get all of the items if they would now fit.
-                            // Another drawback, can only remove non-sets as it gets way to complicated otherwise.
-                            if (minimumRequired.shrinkToFit(maxPersonalItems - itemCount)) {
+                            if (itemCount + minimumRequired.itemCount() <= maxPersonalItems) {
                                 accepted.add(entry);
                                 itemCount += minimumRequired.itemCount();
-                                personalItemsFull = true;
                             } else {
-                                Set<PriceList.Entry> toReevaluate = minimumRequired.getLinked();
-                                accepted.removeAll(toReevaluate);
-                                confirmed.addAll(toReevaluate);
-                                invalidSets.addAll(minimumRequired.getMinimumSets());
-                                personalItemsFull = true;
+                                // Optimise set attempt
+                                // One drawback, if set entry is removed later it won't get all of the items if they would now fit.
+                                // Another drawback, can only remove non-sets as it gets way to complicated otherwise.
+                                if (minimumRequired.shrinkToFit(maxPersonalItems - itemCount)) {
+                                    accepted.add(entry);
+                                    itemCount += minimumRequired.itemCount();
+                                    personalItemsFull = true;
+                                } else {
+                                    Set<PriceList.Entry> toReevaluate = minimumRequired.getLinked();
+                                    accepted.removeAll(toReevaluate);
+                                    confirmed.addAll(toReevaluate);
+                                    invalidSets.addAll(minimumRequired.getMinimumSets());
+                                    personalItemsFull = true;
+                                }
                             }
-                        }
 
-                        confirmed.remove(entry);
+                            confirmed.remove(entry);
+                        }
                     }
 
                     Set<Item> addedContracts = new HashSet<>();
@@ -375,11 +466,11 @@ public class BuyerHandler extends TradeHandler implements MiscConstants, ItemTyp
                     for (PriceList.Entry entry : accepted) {
                         MinimumRequired minimumRequired = minimumRequiredMap.get(entry);
                         if (minimumRequired.isOptimal())
-                            this.trade.creatureOne.getCommunicator().sendSafeServerMessage(this.creature.getName() + " says, 'I do not have enough space to accept all of the " + entry.getItem().getTemplate().getPlural() + ".'");
+                            messages.addToGroup(BuyerMessages.notEnoughSpace, entry.getItem().getTemplate().getPlural());
 
                         int setPrice = minimumRequired.getTotalPrice();
                         if (setPrice == 0) {
-                            this.trade.creatureOne.getCommunicator().sendSafeServerMessage(this.creature.getName() + " says, 'I will not pay you anything, but will accept the " + entry.getItem().getTemplate().getPlural() + " as a donation.'");
+                            messages.addToGroup(BuyerMessages.donation, entry.getItem().getTemplate().getPlural());
                         }
 
                         for (Pair<Item, Integer> itemPrice : minimumRequired.getItemsAndPrices()) {
@@ -390,8 +481,11 @@ public class BuyerHandler extends TradeHandler implements MiscConstants, ItemTyp
                                 else
                                     addedContracts.add(offeredItem);
                             }
-                            offeredWindow.removeItem(offeredItem);
-                            targetWindow.addItem(offeredItem);
+                            minimumAccepted.add(offeredItem);
+                            if (!retained.remove(offeredItem)) {
+                                offeredWindow.removeItem(offeredItem);
+                                targetWindow.addItem(offeredItem);
+                            }
                             ++size;
                             totalPrice += itemPrice.getValue();
                         }
@@ -401,15 +495,21 @@ public class BuyerHandler extends TradeHandler implements MiscConstants, ItemTyp
                 targetWindow.stopReceivingItems();
 
                 if (anyDamaged)
-                    this.trade.creatureOne.getCommunicator().sendSafeServerMessage(this.creature.getName() + " says, 'I don't accept damaged items.'");
+                    messages.add("I don't accept damaged items.");
                 if (anyLocked)
-                    this.trade.creatureOne.getCommunicator().sendSafeServerMessage(this.creature.getName() + " says, 'I don't accept locked items any more. Sorry for the inconvenience.'");
+                    messages.add("I don't accept locked items any more. Sorry for the inconvenience.");
                 if (anyMinimumNotFullWeight)
-                    this.trade.creatureOne.getCommunicator().sendSafeServerMessage(this.creature.getName() + " says, 'I can only accept full weight items when there is a minimum required amount.'");
+                    messages.add("I can only accept full weight items when there is a minimum required amount.");
                 if (anyNotAuthorised)
-                    this.trade.creatureOne.getCommunicator().sendSafeServerMessage(this.creature.getName() + " says, 'I am not authorised to buy " + (offeredWindow.getItems().length != 1 ? "these items" : "this item") + ".'");
+                    messages.add("I am not authorised to buy " + (offeredWindow.getItems().length != 1 ? "these items" : "this item") + ".");
                 if (personalItemsFull)
-                    this.trade.creatureOne.getCommunicator().sendNormalServerMessage(this.creature.getName() + " says, 'I cannot add more items to my stock right now.'");
+                    messages.addNormal("I cannot add more items to my stock right now.");
+            }
+
+            // Anything left was accepted last time but no longer meets its requirement.
+            for (Item item : retained) {
+                targetWindow.removeItem(item);
+                offeredWindow.addItem(item);
             }
 
             return totalPrice;
@@ -419,6 +519,8 @@ public class BuyerHandler extends TradeHandler implements MiscConstants, ItemTyp
     @Override
     void balance() {
         if (!this.balanced) {
+            if (balanceDelay > 0 && System.currentTimeMillis() - this.lastChange < balanceDelay)
+                return;
             if (this.ownerTrade) {
                 this.suckInterestingItems();
                 this.trade.setSatisfied(this.creature, true, this.trade.getCurrentCounter());
@@ -433,7 +535,7 @@ public class BuyerHandler extends TradeHandler implements MiscConstants, ItemTyp
                     if (diff > 0L) {
                         long withBuyersCut = (long)(diff * 1.1f);
                         if (!BuyerTradingWindow.freeMoney && withBuyersCut > this.shop.getMoney()) {
-                            this.trade.creatureOne.getCommunicator().sendSafeServerMessage(this.creature.getName() + " 'I am low on cash and can not purchase those items.'");
+                            messages.add("I am low on cash and can not purchase those items.");
                             this.waiting = true;
                         } else {
                             // Note - These coins are never traded.
@@ -457,6 +559,7 @@ public class BuyerHandler extends TradeHandler implements MiscConstants, ItemTyp
                     }
                 }
             }
+            messages.send(this.creature, this.trade.creatureOne.getCommunicator());
         }
     }
 }
@@ -0,0 +1,75 @@
+package com.wurmonline.server.creatures;
+
+import java.util.*;
+
+/**
+ * Collects what the buyer says during a balance so similar messages go out as one line, e.g. every container that
+ * needs emptying, and nothing is sent if it would repeat the previous balance word for word for the same offer.
+ */
+class BuyerMessages {
+    static final String empty = "Please empty the %s first.";
+    static final String moreRequired = "I will need %s in order to accept them.";
+    static final String donation = "I will not pay you anything, but will accept the %s as a donation.";
+    static final String notEnoughSpace = "I do not have enough space to accept all of the %s.";
+    // Message, or format for grouped messages -> names to fill in, empty for plain messages.
+    private final Map<String, Set<String>> lines = new LinkedHashMap<>();
+    private final Set<String> normal = new HashSet<>();
+    private List<String> lastSent = Collections.emptyList();
+
+    void add(String message) {
+        lines.computeIfAbsent(message, k -> new LinkedHashSet<>());
+    }
+
+    /**
+     * Sent as a normal rather than a safe message, e.g. to stand out.
+     */
+    void addNormal(String message) {
+        add(message);
+        normal.add(message);
+    }
+
+    void addToGroup(String format, String name) {
+        lines.computeIfAbsent(format, k -> new LinkedHashSet<>()).add(name);
+    }
+
+    static String join(Collection<String> names) {
+        StringBuilder sb = new StringBuilder();
+        int i = 0;
+        for (String name : names) {
+            if (i > 0)
+                sb.append(i == names.size() - 1 ? " and " : ", ");
+            sb.append(name);
+            ++i;
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The player has changed what they are offering, so the next balance is answered even if it says the same again.
+     */
+    void offerChanged() {
+        lastSent = Collections.emptyList();
+    }
+
+    void send(Creature buyer, Communicator communicator) {
+        List<String> messages = new ArrayList<>(lines.size());
+        for (Map.Entry<String, Set<String>> line : lines.entrySet()) {
+            String text = line.getValue().isEmpty() ? line.getKey() : String.format(line.getKey(), join(line.getValue()));
+            messages.add(buyer.getName() + " says, '" + text + "'");
+        }
+
+        if (!messages.equals(lastSent)) {
+            int i = 0;
+            for (String key : lines.keySet()) {
+                if (normal.contains(key))
+                    communicator.sendNormalServerMessage(messages.get(i));
+                else
+                    communicator.sendSafeServerMessage(messages.get(i));
+                ++i;
+            }
+            lastSent = messages;
+        }
+        lines.clear();
+        normal.clear();
+    }
+}
@@ -0,0 +1,90 @@
+package com.wurmonline.server.creatures;
+
+import com.wurmonline.server.items.Item;
+import mod.wurmunlimited.buyermerchant.PriceList;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The price list entries that a delivery contract's contents fall under, and what they are worth.
+ *
+ * The contents are grouped by template, material, QL and whether they are full weight first, so each group only needs
+ * one lookup.  Items taken from bulk storage all share the same QL, so a contract of hundreds of them is a single
+ * group.
+ */
+class ContractContents {
+    private static final Comparator<Item> grouping = Comparator.comparingInt(Item::getTemplateId)
+                                                             .thenComparingInt(Item::getMaterial)
+                                                             .thenComparingDouble(Item::getQualityLevel)
+                                                             .thenComparing(ContractContents::isFullWeight);
+    final long signature;
+    // 0 if the contents can be bought, otherwise the reason they cannot.
+    final int result;
+    final Map<PriceList.Entry, Integer> entries = new HashMap<>();
+    final int price;
+
+    ContractContents(Item contract, long signature, TradePrices prices) {
+        this.signature = signature;
+        Item[] items = contract.getItemsAsArray();
+        Arrays.sort(items, grouping);
+        int total = 0;
+        int result = 0;
+
+        int start = 0;
+        while (start < items.length) {
+            Item first = items[start];
+            int end = start + 1;
+            while (end < items.length && grouping.compare(first, items[end]) == 0)
+                ++end;
+
+            PriceList.Entry entry = prices.getEntry(first);
+            if (entry == null) {
+                result = BuyerHandler.unauthorisedItem;
+                break;
+            }
+            if (entry.getMinimumPurchase() != 1 && !isFullWeight(first)) {
+                result = BuyerHandler.notFullWeight;
+                break;
+            }
+
+            int count = end - start;
+            entries.merge(entry, count, Integer::sum);
+            total += count * entry.getPrice(first.getQualityLevel());
+            start = end;
+        }
+
+        this.result = result;
+        price = total;
+    }
+
+    private static boolean isFullWeight(Item item) {
+        return item.getWeightGrams() >= item.getTemplate().getWeightGrams();
+    }
+
+    /**
+     * @return A value that changes if any of the contract's contents are added, removed or changed.  Each item's
+     * details are mixed into a hash of their own before being added, so changes to separate items cannot cancel out.
+     */
+    static long getSignature(Item contract) {
+        long signature = 0;
+        for (Item item : contract.getItems()) {
+            long hash = item.getWurmId();
+            hash = hash * 31 + item.getWeightGrams();
+            hash = hash * 31 + Float.floatToIntBits(item.getQualityLevel());
+            hash = hash * 31 + Float.floatToIntBits(item.getDamage());
+            hash = hash * 31 + item.getMaterial();
+            signature += mix(hash);
+        }
+        return signature;
+    }
+
+    // SplitMix64 finaliser, so that every input bit affects every output bit.
+    private static long mix(long hash) {
+        hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+        return hash ^ (hash >>> 31);
+    }
+}
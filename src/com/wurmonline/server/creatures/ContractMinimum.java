@@ -12,17 +12,15 @@ class ContractMinimum implements MinimumSet {
     private final Item contract;
     private final List<PriceList.Entry> entries = new ArrayList<>();
     private final List<Integer> counts = new ArrayList<>();
-    private int price;
+    private final int price;
 
-    ContractMinimum(Item contract, Map<PriceList.Entry, Integer> entries) {
+    ContractMinimum(Item contract, Map<PriceList.Entry, Integer> entries, int price) {
         this.contract = contract;
+        this.price = price;
 
         for (Map.Entry<PriceList.Entry, Integer> category : entries.entrySet()) {
-            PriceList.Entry entry = category.getKey();
-            int value = category.getValue();
-            this.entries.add(entry);
-            counts.add(value);
-            price += value * entry.getPrice();
+            this.entries.add(category.getKey());
+            counts.add(category.getValue());
         }
     }
 
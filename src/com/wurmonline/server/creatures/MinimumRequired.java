@@ -4,8 +4,10 @@ import com.wurmonline.server.items.Item;
 import javafx.util.Pair;
 import mod.wurmunlimited.buyermerchant.PriceList;
 
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -54,7 +56,6 @@ public class MinimumRequired {
         return () -> new Iterator<Pair<Item, Integer>>() {
             Iterator<Item> items = individualItems.iterator();
             Iterator<MinimumSet> others = otherItems.iterator();
-            final int price = entry.getPrice();
 
             @Override
             public boolean hasNext() {
@@ -63,9 +64,10 @@ public class MinimumRequired {
 
             @Override
             public Pair<Item, Integer> next() {
-                if (items.hasNext())
-                    return new Pair<>(items.next(), price);
-                else {
+                if (items.hasNext()) {
+                    Item item = items.next();
+                    return new Pair<>(item, entry.getPrice(item.getQualityLevel()));
+                } else {
                     MinimumSet set = others.next();
                     return new Pair<>(set.getItem(), set.getPrice());
                 }
@@ -86,9 +88,13 @@ public class MinimumRequired {
     }
 
     public int getTotalPrice() {
-        if (entry.getPrice() == 0)
-            return 0;
-        return count() * entry.getPrice();
+        int total = 0;
+        for (Item item : individualItems)
+            total += entry.getPrice(item.getQualityLevel());
+        // Sets are priced as a whole, so this only uses the entry's own price for them.
+        for (MinimumSet set : otherItems)
+            total += set.countFor(entry) * entry.getPrice();
+        return total;
     }
 
     public Set<MinimumSet> getMinimumSets() {
@@ -103,6 +109,33 @@ public class MinimumRequired {
         return isOptimal;
     }
 
+    private List<Item> getIndividualItemsByValue() {
+        return individualItems.stream()
+                       .sorted(Comparator.comparingInt((Item item) -> entry.getPrice(item.getQualityLevel())).reversed())
+                       .collect(Collectors.toList());
+    }
+
+    /**
+     * @return Total price of the most valuable k individual items at index k, so index 0 is always 0.
+     */
+    long[] getIndividualValues() {
+        List<Item> items = getIndividualItemsByValue();
+        long[] values = new long[items.size() + 1];
+        for (int i = 0; i < items.size(); ++i)
+            values[i + 1] = values[i] + entry.getPrice(items.get(i).getQualityLevel());
+        return values;
+    }
+
+    /**
+     * Keeps only the most valuable count individual items and the given sets.
+     */
+    void keep(int count, Set<MinimumSet> sets) {
+        if (count < individualItems.size() || !sets.containsAll(otherItems))
+            isOptimal = true;
+        individualItems = getIndividualItemsByValue().stream().limit(count).collect(Collectors.toSet());
+        otherItems.retainAll(sets);
+    }
+
     public boolean shrinkToFit(int space) {
         isOptimal = true;
         int count = otherItems.size();
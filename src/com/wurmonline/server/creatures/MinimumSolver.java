@@ -0,0 +1,221 @@
+package com.wurmonline.server.creatures;
+
+import mod.wurmunlimited.buyermerchant.PriceList;
+
+import java.util.*;
+
+/**
+ * Chooses which minimum purchase entries, and which of their items, to accept so that the most value fits in the
+ * buyer's remaining space.  A delivery contract is linked to every entry it holds items for, so it can only be
+ * accepted if all of those entries are.
+ *
+ * Every combination of contracts is tried, skipping any that cannot beat the best found so far, and for each one the
+ * remaining space is shared out between the entries' individual items.  If that takes longer than the budget the
+ * search gives up and the caller should fall back to filling entries in order.
+ */
+class MinimumSolver {
+    // Nanoseconds the search may take before giving up.
+    static long budget = 5_000_000L;
+    private static final long impossible = Long.MIN_VALUE;
+    private final List<PriceList.Entry> entries;
+    private final MinimumRequired[] minimums;
+    private final MinimumSet[] sets;
+    // Set index -> indices of its linked entries and the number of items it holds for each.
+    private final int[][] setEntries;
+    private final int[][] setCounts;
+    // Entry index -> total price of its best k individual items, most valuable first.
+    private final long[][] values;
+    private final int individualItems;
+    // Scores are value * weight + items, so more items are accepted when the value is equal, e.g. donations.
+    private final long weight;
+    private final long individualScore;
+    // Best possible score of the sets from each index onwards, for pruning.
+    private final long[] remainingSetScores;
+    private final boolean[] chosen;
+    private boolean[] bestChosen;
+    private int[] bestCounts;
+    private long best = impossible;
+    private int space;
+    private long start;
+
+    MinimumSolver(Map<PriceList.Entry, MinimumRequired> minimumRequiredMap, List<PriceList.Entry> confirmed) {
+        entries = new ArrayList<>(confirmed);
+        minimums = new MinimumRequired[entries.size()];
+        values = new long[entries.size()][];
+        Map<PriceList.Entry, Integer> indices = new HashMap<>();
+        Set<MinimumSet> allSets = new LinkedHashSet<>();
+        int count = 0;
+        for (int i = 0; i < entries.size(); ++i) {
+            PriceList.Entry entry = entries.get(i);
+            indices.put(entry, i);
+            minimums[i] = minimumRequiredMap.get(entry);
+            values[i] = minimums[i].getIndividualValues();
+            count += values[i].length - 1;
+            allSets.addAll(minimums[i].getMinimumSets());
+        }
+        individualItems = count;
+
+        // Sets linked to an entry that did not meet its minimum can never be accepted.
+        List<MinimumSet> usable = new ArrayList<>();
+        for (MinimumSet set : allSets) {
+            if (indices.keySet().containsAll(set.getLinked()))
+                usable.add(set);
+        }
+        sets = usable.toArray(new MinimumSet[0]);
+        setEntries = new int[sets.length][];
+        setCounts = new int[sets.length][];
+        for (int i = 0; i < sets.length; ++i) {
+            List<PriceList.Entry> linked = sets[i].getLinked();
+            setEntries[i] = new int[linked.size()];
+            setCounts[i] = new int[linked.size()];
+            for (int j = 0; j < linked.size(); ++j) {
+                setEntries[i][j] = indices.get(linked.get(j));
+                setCounts[i][j] = sets[i].countFor(linked.get(j));
+            }
+        }
+
+        weight = individualItems + sets.length + 1;
+        long total = 0;
+        for (long[] entryValues : values)
+            total += entryValues[entryValues.length - 1] * weight + entryValues.length - 1;
+        individualScore = total;
+        remainingSetScores = new long[sets.length + 1];
+        for (int i = sets.length - 1; i >= 0; --i)
+            remainingSetScores[i] = remainingSetScores[i + 1] + setScore(i);
+        chosen = new boolean[sets.length];
+    }
+
+    private long setScore(int set) {
+        return sets[set].getPrice() * weight + 1;
+    }
+
+    /**
+     * @return false if the budget ran out before the best answer was found.
+     */
+    boolean solve(int space) {
+        this.space = space;
+        best = impossible;
+        if (individualItems + sets.length <= space) {
+            // Everything fits, and every confirmed entry meets its minimum with all of its sets.
+            bestChosen = new boolean[sets.length];
+            Arrays.fill(bestChosen, true);
+            bestCounts = new int[entries.size()];
+            for (int i = 0; i < entries.size(); ++i)
+                bestCounts[i] = values[i].length - 1;
+            return true;
+        }
+        start = System.nanoTime();
+        return search(0, 0);
+    }
+
+    private boolean search(int set, long setScore) {
+        if (System.nanoTime() - start > budget)
+            return false;
+        if (best != impossible && setScore + remainingSetScores[set] + individualScore <= best)
+            return true;
+        if (set == sets.length) {
+            evaluate(setScore);
+            return true;
+        }
+        chosen[set] = true;
+        if (!search(set + 1, setScore + setScore(set)))
+            return false;
+        chosen[set] = false;
+        return search(set + 1, setScore);
+    }
+
+    // Shares the space left by the chosen sets between the entries' individual items.
+    private void evaluate(long setScore) {
+        int[] covered = new int[entries.size()];
+        boolean[] forced = new boolean[entries.size()];
+        int used = 0;
+        for (int i = 0; i < sets.length; ++i) {
+            if (chosen[i]) {
+                ++used;
+                for (int j = 0; j < setEntries[i].length; ++j) {
+                    forced[setEntries[i][j]] = true;
+                    covered[setEntries[i][j]] += setCounts[i][j];
+                }
+            }
+        }
+        if (used > space)
+            return;
+
+        int capacity = Math.min(space - used, individualItems);
+        long[] scores = new long[capacity + 1];
+        // Entry index -> space used so far -> individual items taken, -1 if not accepted.
+        int[][] taken = new int[entries.size()][capacity + 1];
+        for (int e = 0; e < entries.size(); ++e) {
+            long[] next = new long[capacity + 1];
+            int available = values[e].length - 1;
+            int lowest = Math.max(forced[e] ? 0 : 1, entries.get(e).getMinimumPurchase() - covered[e]);
+            for (int c = 0; c <= capacity; ++c) {
+                long score = forced[e] ? impossible : scores[c];
+                int count = -1;
+                for (int k = lowest; k <= available && k <= c; ++k) {
+                    if (scores[c - k] != impossible) {
+                        long withItems = scores[c - k] + values[e][k] * weight + k;
+                        if (withItems > score) {
+                            score = withItems;
+                            count = k;
+                        }
+                    }
+                }
+                next[c] = score;
+                taken[e][c] = count;
+            }
+            scores = next;
+        }
+
+        if (scores[capacity] == impossible || setScore + scores[capacity] <= best)
+            return;
+        best = setScore + scores[capacity];
+        bestChosen = chosen.clone();
+        bestCounts = new int[entries.size()];
+        int c = capacity;
+        for (int e = entries.size() - 1; e >= 0; --e) {
+            bestCounts[e] = taken[e][c];
+            if (bestCounts[e] > 0)
+                c -= bestCounts[e];
+        }
+    }
+
+    /**
+     * Trims each MinimumRequired down to the chosen items.
+     * @return The entries to accept.
+     */
+    List<PriceList.Entry> getAccepted() {
+        List<PriceList.Entry> accepted = new ArrayList<>();
+        if (bestCounts == null)
+            return accepted;
+        Set<MinimumSet> chosenSets = new HashSet<>();
+        for (int i = 0; i < sets.length; ++i) {
+            if (bestChosen[i])
+                chosenSets.add(sets[i]);
+        }
+        for (int e = 0; e < entries.size(); ++e) {
+            if (bestCounts[e] != -1) {
+                minimums[e].keep(bestCounts[e], chosenSets);
+                accepted.add(entries.get(e));
+            }
+        }
+        return accepted;
+    }
+
+    /**
+     * @return Whether any items had to be left out for lack of space.
+     */
+    boolean anyLeftOut() {
+        if (bestCounts == null)
+            return !entries.isEmpty();
+        for (boolean set : bestChosen) {
+            if (!set)
+                return true;
+        }
+        for (int e = 0; e < entries.size(); ++e) {
+            if (bestCounts[e] != values[e].length - 1)
+                return true;
+        }
+        return false;
+    }
+}
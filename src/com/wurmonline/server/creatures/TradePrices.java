@@ -0,0 +1,102 @@
+package com.wurmonline.server.creatures;
+
+import com.wurmonline.server.items.Item;
+import mod.wurmunlimited.buyermerchant.PriceList;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Price list lookups for the items in a trade, so an offer that has not changed is almost free to evaluate again.
+ * Each result is kept against the item's id along with the details that decide its price, and is worked out again if
+ * any of those have changed since.
+ */
+class TradePrices {
+    private final PriceList priceList;
+    // WurmId -> row.
+    private final Map<Long, Integer> rows = new HashMap<>();
+    private int size = 0;
+    private int[] weights = new int[16];
+    private float[] qls = new float[16];
+    private float[] damages = new float[16];
+    private byte[] materials = new byte[16];
+    private PriceList.Entry[] entries = new PriceList.Entry[16];
+    private int[] prices = new int[16];
+
+    TradePrices(PriceList priceList) {
+        this.priceList = priceList;
+    }
+
+    private int getRow(Item item) {
+        Integer row = rows.get(item.getWurmId());
+        if (row == null) {
+            if (size == weights.length) {
+                int capacity = size * 2;
+                weights = Arrays.copyOf(weights, capacity);
+                qls = Arrays.copyOf(qls, capacity);
+                damages = Arrays.copyOf(damages, capacity);
+                materials = Arrays.copyOf(materials, capacity);
+                entries = Arrays.copyOf(entries, capacity);
+                prices = Arrays.copyOf(prices, capacity);
+            }
+            row = size++;
+            rows.put(item.getWurmId(), row);
+            update(row, item);
+        } else if (weights[row] != item.getWeightGrams() || qls[row] != item.getQualityLevel()
+                           || damages[row] != item.getDamage() || materials[row] != item.getMaterial()) {
+            update(row, item);
+        }
+        return row;
+    }
+
+    private void update(int row, Item item) {
+        weights[row] = item.getWeightGrams();
+        qls[row] = item.getQualityLevel();
+        damages[row] = item.getDamage();
+        materials[row] = item.getMaterial();
+        entries[row] = priceList.getEntryFor(item);
+        prices[row] = entries[row] == null ? 0 : getPrice(entries[row], item);
+    }
+
+    private static int getPrice(PriceList.Entry entry, Item item) {
+        int markedPrice = 0;
+
+        if (item.getDamage() != 0) {
+            return markedPrice;
+        }
+
+        markedPrice = entry.getPrice(item.getQualityLevel());
+
+        // Could be 0 or unauthorised.
+        if (markedPrice < 1)
+            return markedPrice;
+
+        float weightRatio = ((float)item.getWeightGrams()) / ((float)item.getTemplate().getWeightGrams());
+
+        return Math.max(0, (int)(markedPrice * weightRatio));
+    }
+
+    /**
+     * @return The entry that would buy the item, or null if none.
+     */
+    PriceList.Entry getEntry(Item item) {
+        return entries[getRow(item)];
+    }
+
+    /**
+     * @return The price the buyer would pay for the item, 0 if it is not on the price list.
+     */
+    int getPrice(Item item) {
+        return prices[getRow(item)];
+    }
+
+    /**
+     * Forgets everything, for when the price list has changed.
+     */
+    void clear() {
+        rows.clear();
+        Arrays.fill(entries, 0, size, null);
+        size = 0;
+    }
+}
@@ -10,8 +10,10 @@ import com.wurmonline.server.creatures.Creature;
 import com.wurmonline.server.economy.Economy;
 import com.wurmonline.server.economy.Shop;
 import com.wurmonline.server.players.Player;
+import mod.wurmunlimited.buyermerchant.CustomerQueue;
 import mod.wurmunlimited.buyermerchant.PriceList;
 
+import java.util.function.BiPredicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -25,6 +27,10 @@ public class BuyerTrade extends Trade {
     private int currentCounter = -1;
     private static final Logger logger = Logger.getLogger(Trade.class.getName());
     private long tax = 0L;
+    private boolean finished = false;
+    // Starts the trade with the next queued player, returning false if it could not.  Set by BuyerMerchant once the
+    // server has started.
+    public static BiPredicate<Creature, Creature> queuedTradeStarter = (player, buyer) -> false;
 
     public BuyerTrade(Creature playerCreature, Creature buyerCreature) throws PriceList.NoPriceListOnBuyer {
         PriceList.getPriceListFromBuyer(buyerCreature);
@@ -37,6 +43,7 @@ public class BuyerTrade extends Trade {
         this.creatureOneOfferWindow = new BuyerTradingWindow(playerCreature, buyerCreature, true, 2L, this);
         this.creatureOneRequestWindow = new BuyerTradingWindow(buyerCreature, playerCreature, false, 3L, this);
         this.creatureTwoRequestWindow = new BuyerTradingWindow(playerCreature, buyerCreature, false, 4L, this);
+        CustomerQueue.tradeStarted(buyerCreature);
     }
 
     @Override
@@ -78,6 +85,7 @@ public class BuyerTrade extends Trade {
                 if (this.makeBuyerTrade()) {
                     this.creatureOne.getCommunicator().sendCloseTradeWindow();
                     this.creatureTwo.getCommunicator().sendCloseTradeWindow();
+                    this.startNextTrade();
                 } else {
                     this.creatureOne.getCommunicator().sendTradeAgree(creature, satisfied);
                     this.creatureTwo.getCommunicator().sendTradeAgree(creature, satisfied);
@@ -205,6 +213,24 @@ public class BuyerTrade extends Trade {
         this.creatureTwoRequestWindow.endTrade();
         this.creatureOne.setTrade(null);
         this.creatureTwo.setTrade(null);
+        this.startNextTrade();
+    }
+
+    // Starts trading with the next player waiting for the buyer, if any.
+    private void startNextTrade() {
+        // end() is also called when a trade fails to complete.
+        if (this.finished) {
+            return;
+        }
+        this.finished = true;
+
+        // A player whose trade could not be started has already lost their place, so try the one after them.
+        Creature next;
+        while ((next = CustomerQueue.tradeEnded(this.creatureTwo)) != null) {
+            if (queuedTradeStarter.test(next, this.creatureTwo)) {
+                return;
+            }
+        }
     }
 
     @Override
@@ -7,14 +7,16 @@
 package com.wurmonline.server.items;
 
 import com.wurmonline.server.*;
+import com.wurmonline.server.creatures.BuyerHandler;
 import com.wurmonline.server.creatures.Creature;
+import com.wurmonline.server.creatures.TradeHandler;
 import com.wurmonline.server.economy.Economy;
 import com.wurmonline.server.economy.Shop;
 import com.wurmonline.server.players.Player;
 import com.wurmonline.shared.util.MaterialUtilities;
 import mod.wurmunlimited.buyermerchant.PriceList;
+import mod.wurmunlimited.buyermerchant.PurchaseLedger;
 
-import java.io.IOException;
 import java.util.*;
 import java.util.logging.*;
 import java.util.stream.Collectors;
@@ -27,7 +29,6 @@ public class BuyerTradingWindow extends TradingWindow {
     private Set<Item> items;
     private final Trade trade;
     private static final Logger logger = Logger.getLogger(BuyerTradingWindow.class.getName());
-    private static final Map<String, Logger> loggers = new HashMap();
     public static boolean freeMoney = false;
     public static boolean destroyBoughtItems = false;
 
@@ -41,52 +42,30 @@ public class BuyerTradingWindow extends TradingWindow {
     }
 
     public static void stopLoggers() {
-        Iterator var0 = loggers.values().iterator();
-
-        while (true) {
-            Logger logger;
-            do {
-                if (!var0.hasNext()) {
-                    return;
-                }
-
-                logger = (Logger) var0.next();
-            } while (logger == null);
-
-            Handler[] var2 = logger.getHandlers();
-            int var3 = var2.length;
-
-            for (int var4 = 0; var4 < var3; ++var4) {
-                Handler h = var2[var4];
-                h.close();
-            }
-        }
+        TradeLogWriter.stop();
+        PurchaseLedger.close();
     }
 
-    private static Logger getLogger(long wurmid) {
-        String name = "trader" + wurmid;
-        Logger personalLogger = (Logger) loggers.get(name);
-        if (personalLogger == null) {
-            personalLogger = Logger.getLogger(name);
-            personalLogger.setUseParentHandlers(false);
-            Handler[] h = logger.getHandlers();
-
-            for (int i = 0; i != h.length; ++i) {
-                personalLogger.removeHandler(h[i]);
-            }
-
-            try {
-                FileHandler fh = new FileHandler(name + ".log", 0, 1, true);
-                fh.setFormatter(new SimpleFormatter());
-                personalLogger.addHandler(fh);
-            } catch (IOException var6) {
-                Logger.getLogger(name).log(Level.WARNING, name + ":no redirection possible!");
-            }
-
-            loggers.put(name, personalLogger);
+    private void recordPurchase(Shop shop, Item item) {
+        // Items the owner hands over are not purchases.
+        if (shop == null || this.windowowner.getWurmId() == shop.getOwnerId())
+            return;
+        TradeHandler handler = this.watcher.getTradeHandler();
+        if (!(handler instanceof BuyerHandler))
+            return;
+
+        // A delivery contract is paid for by its contents, so each of them is recorded instead.
+        if (BuyerHandler.isDeliveryContract(item)) {
+            for (Item contained : item.getItems())
+                recordPurchase(shop, contained, ((BuyerHandler)handler).getAcceptedPrice(contained));
+        } else {
+            recordPurchase(shop, item, ((BuyerHandler)handler).getAcceptedPrice(item));
         }
+    }
 
-        return personalLogger;
+    private void recordPurchase(Shop shop, Item item, int price) {
+        PurchaseLedger.record(shop.getWurmId(), shop.getOwnerId(), this.windowowner.getWurmId(), item.getTemplateId(),
+                item.getMaterial(), item.getQualityLevel(), item.getWeightGrams(), price);
     }
 
     @Override
@@ -216,6 +195,15 @@ public class BuyerTradingWindow extends TradingWindow {
 
             this.items.add(item);
             this.addToTrade(item, parent);
+            if (this.windowId == 4L) {
+                BuyerHandler handler = getBuyerHandler();
+                if (handler != null)
+                    handler.requestWindowChanged(item, true);
+            } else if (this.windowId == 2L) {
+                BuyerHandler handler = getBuyerHandler();
+                if (handler != null)
+                    handler.offerWindowChanged();
+            }
             // Note - isViewableBy refers to locked containers.
             if (item == parent || parent.isViewableBy(this.windowowner)) {
                 if (!this.windowowner.isPlayer()) {
@@ -268,6 +256,15 @@ public class BuyerTradingWindow extends TradingWindow {
             this.removeExistingContainedItems(item);
             this.items.remove(item);
             this.removeFromTrade(item, true);
+            if (this.windowId == 4L) {
+                BuyerHandler handler = getBuyerHandler();
+                if (handler != null)
+                    handler.requestWindowChanged(item, false);
+            } else if (this.windowId == 2L) {
+                BuyerHandler handler = getBuyerHandler();
+                if (handler != null)
+                    handler.offerWindowChanged();
+            }
             this.tradeChanged();
         }
 
@@ -276,6 +273,9 @@ public class BuyerTradingWindow extends TradingWindow {
     @Override
     public void updateItem(Item item) {
         if (this.items != null && item.tradeWindow == this) {
+            BuyerHandler handler = getBuyerHandler();
+            if (handler != null)
+                handler.itemChanged(item);
             if (!this.windowowner.isPlayer()) {
                 this.windowowner.getCommunicator().sendUpdateInventoryItem(item, this.windowId, 0);
             } else if (!this.watcher.isPlayer()) {
@@ -293,6 +293,16 @@ public class BuyerTradingWindow extends TradingWindow {
 
     }
 
+    // The buyer is never a player, so is whichever side of the window is not.
+    private BuyerHandler getBuyerHandler() {
+        Creature buyer = this.windowowner.isPlayer() ? this.watcher : this.windowowner;
+        // Don't start a new handler once the trade has ended.
+        if (buyer.getTrade() == null)
+            return null;
+        TradeHandler handler = buyer.getTradeHandler();
+        return handler instanceof BuyerHandler ? (BuyerHandler)handler : null;
+    }
+
     private void tradeChanged() {
         if (this.windowId == 2L && !this.trade.creatureTwo.isPlayer()) {
             this.trade.setCreatureTwoSatisfied(false);
@@ -456,7 +466,7 @@ public class BuyerTradingWindow extends TradingWindow {
                             if (coin) {
                                 if (shop != null) {
                                     if (shop.isPersonal()) {
-                                        getLogger(shop.getWurmId()).log(Level.INFO, this.watcher.getName() + " received " + MaterialUtilities.getMaterialString(lIt.getMaterial()) + " " + lIt.getName() + ", id: " + lIt.getWurmId() + ", QL: " + lIt.getQualityLevel());
+                                        TradeLogWriter.log(shop.getWurmId(), this.watcher.getName() + " received " + MaterialUtilities.getMaterialString(lIt.getMaterial()) + " " + lIt.getName() + ", id: " + lIt.getWurmId() + ", QL: " + lIt.getQualityLevel());
                                         if (this.windowowner.getWurmId() == shop.getOwnerId()) {
                                             inventory.insertItem(lIt);
                                             moneyAdded += Economy.getValueFor(lIt.getTemplateId());
@@ -471,22 +481,26 @@ public class BuyerTradingWindow extends TradingWindow {
                                 // Override price list with new one provided by owner.
                                 for (Item priceList : this.watcher.getInventory().getItems()) {
                                     if (PriceList.isPriceList(priceList)) {
+                                        PriceList.invalidate(priceList);
                                         Items.destroyItem(priceList.getWurmId());
                                         break;
                                     }
                                 }
+                                PriceList.invalidate(lIt);
                                 inventory.insertItem(lIt);
 
                                 if (shop != null) {
-                                    getLogger(shop.getWurmId()).log(Level.INFO, this.watcher.getName() + " updated Price List - " + lIt.getName() + ", id: " + lIt.getWurmId());
+                                    TradeLogWriter.log(shop.getWurmId(), this.watcher.getName() + " updated Price List - " + lIt.getName() + ", id: " + lIt.getWurmId());
                                 }
                             } else if (destroyBoughtItems) {
+                                this.recordPurchase(shop, lIt);
                                 Items.destroyItem(lIt.getWurmId(), true);
                             } else {
+                                this.recordPurchase(shop, lIt);
                                 inventory.insertItem(lIt);
 
                                 if (shop != null) {
-                                    getLogger(shop.getWurmId()).log(Level.INFO, this.watcher.getName() + " received " + MaterialUtilities.getMaterialString(lIt.getMaterial()) + " " + lIt.getName() + ", id: " + lIt.getWurmId() + ", QL: " + lIt.getQualityLevel());
+                                    TradeLogWriter.log(shop.getWurmId(), this.watcher.getName() + " received " + MaterialUtilities.getMaterialString(lIt.getMaterial()) + " " + lIt.getName() + ", id: " + lIt.getWurmId() + ", QL: " + lIt.getQualityLevel());
                                 }
                             }
                         // This is for the Buyer's Window aka 3
@@ -495,7 +509,7 @@ public class BuyerTradingWindow extends TradingWindow {
                             if (coin) {
                                 moneyLost += Economy.getValueFor(lIt.getTemplateId());
                             }
-                            getLogger(shop.getWurmId()).log(Level.INFO, this.watcher.getName() + " received " + MaterialUtilities.getMaterialString(lIt.getMaterial()) + " " + lIt.getName() + ", id: " + lIt.getWurmId() + ", QL: " + lIt.getQualityLevel());
+                            TradeLogWriter.log(shop.getWurmId(), this.watcher.getName() + " received " + MaterialUtilities.getMaterialString(lIt.getMaterial()) + " " + lIt.getName() + ", id: " + lIt.getWurmId() + ", QL: " + lIt.getQualityLevel());
                         }
                     }
 
@@ -0,0 +1,16 @@
+package com.wurmonline.server.items;
+
+/**
+ * A line waiting to be written to a buyer's trade log.
+ */
+class TradeLogEntry {
+    final long shopId;
+    final long millis;
+    final String message;
+
+    TradeLogEntry(long shopId, long millis, String message) {
+        this.shopId = shopId;
+        this.millis = millis;
+        this.message = message;
+    }
+}
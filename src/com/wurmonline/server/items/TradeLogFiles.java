@@ -0,0 +1,121 @@
+package com.wurmonline.server.items;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The open trade log files, at most maxOpen of them.  Opening one more closes the least recently used, and files that
+ * have not been written to for a while are closed as well.  A closed file is opened again in append mode the next
+ * time its buyer trades.
+ */
+public class TradeLogFiles {
+    private static final Logger logger = Logger.getLogger(TradeLogFiles.class.getName());
+    private final int maxOpen;
+    private final long idleMillis;
+    // Shop WurmId -> open file, least recently used first.
+    private final LinkedHashMap<Long, Writer> files = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Long, Long> lastUsed = new HashMap<>();
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    TradeLogFiles(int maxOpen, long idleMillis) {
+        this.maxOpen = maxOpen;
+        this.idleMillis = idleMillis;
+    }
+
+    /**
+     * @return The shop's log file, or null if it could not be opened.
+     */
+    synchronized Writer get(long shopId, long now) {
+        Writer writer = files.get(shopId);
+        if (writer != null) {
+            ++hits;
+        } else {
+            ++misses;
+            String name = "trader" + shopId;
+            try {
+                writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(name + ".log", true), StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                logger.log(Level.WARNING, name + ":no redirection possible!");
+                return null;
+            }
+            if (files.size() >= maxOpen) {
+                Iterator<Map.Entry<Long, Writer>> eldest = files.entrySet().iterator();
+                Map.Entry<Long, Writer> entry = eldest.next();
+                close(entry.getValue());
+                lastUsed.remove(entry.getKey());
+                eldest.remove();
+                ++evictions;
+            }
+            files.put(shopId, writer);
+        }
+        lastUsed.put(shopId, now);
+        return writer;
+    }
+
+    /**
+     * Closes the files that have not been used for idleMillis.
+     */
+    synchronized void closeIdle(long now) {
+        Iterator<Map.Entry<Long, Writer>> it = files.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, Writer> entry = it.next();
+            // Least recently used first, so the rest have been used since.
+            if (now - lastUsed.get(entry.getKey()) < idleMillis)
+                break;
+            close(entry.getValue());
+            lastUsed.remove(entry.getKey());
+            it.remove();
+            ++evictions;
+        }
+    }
+
+    synchronized void closeAll() {
+        for (Writer writer : files.values()) {
+            close(writer);
+        }
+        files.clear();
+        lastUsed.clear();
+    }
+
+    private static void close(Writer writer) {
+        try {
+            writer.close();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, e.getMessage(), e);
+        }
+    }
+
+    public synchronized int getOpen() {
+        return files.size();
+    }
+
+    /**
+     * @return The number of times a file was already open when needed.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return The number of times a file had to be opened.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return The number of files closed to make room or because they were idle.
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+}
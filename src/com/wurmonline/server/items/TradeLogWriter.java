@@ -0,0 +1,162 @@
+package com.wurmonline.server.items;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Formatter;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
+
+/**
+ * Writes each buyer's trade log, trader{id}.log, on a background thread so trades never wait on the disk.
+ *
+ * Lines go into a fixed size queue and are written out in batches, grouped by shop.  If the queue is full the line is
+ * dropped rather than holding up the trade, and counted.  The files are in the same format the per shop FileHandlers
+ * used to write, and only a limited number are kept open at once, see TradeLogFiles.
+ */
+public class TradeLogWriter {
+    private static final Logger logger = Logger.getLogger(TradeLogWriter.class.getName());
+    private static final int CAPACITY = 8192;
+    private static final int BATCH_SIZE = 512;
+    private static final BlockingQueue<TradeLogEntry> queue = new ArrayBlockingQueue<>(CAPACITY);
+    private static final AtomicLong dropped = new AtomicLong();
+    private static final Formatter formatter = new SimpleFormatter();
+    // Log files unused for this long are closed.
+    private static final long IDLE_MILLIS = 60_000L;
+    private static final TradeLogFiles files = new TradeLogFiles(32, IDLE_MILLIS);
+    private static long droppedReported = 0;
+    private static volatile Thread thread;
+
+    /**
+     * Queues the message for the shop's log without waiting.
+     */
+    static void log(long shopId, String message) {
+        if (!queue.offer(new TradeLogEntry(shopId, System.currentTimeMillis(), message))) {
+            dropped.incrementAndGet();
+        }
+        if (thread == null) {
+            start();
+        }
+    }
+
+    private static synchronized void start() {
+        if (thread == null) {
+            thread = new Thread(TradeLogWriter::run, "BuyerTradeLogWriter");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private static void run() {
+        List<TradeLogEntry> batch = new ArrayList<>(BATCH_SIZE);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                TradeLogEntry entry = queue.poll(IDLE_MILLIS, TimeUnit.MILLISECONDS);
+                if (entry == null) {
+                    closeIdle();
+                    continue;
+                }
+                batch.add(entry);
+            } catch (InterruptedException e) {
+                break;
+            }
+            queue.drainTo(batch, BATCH_SIZE - 1);
+            write(batch);
+            batch.clear();
+        }
+    }
+
+    private static synchronized void closeIdle() {
+        files.closeIdle(System.currentTimeMillis());
+    }
+
+    private static synchronized void write(List<TradeLogEntry> batch) {
+        long droppedNow = dropped.get();
+        if (droppedNow != droppedReported) {
+            logger.warning((droppedNow - droppedReported) + " buyer trade log entries were dropped as the queue was full.");
+            droppedReported = droppedNow;
+        }
+
+        Map<Long, List<TradeLogEntry>> byShop = new LinkedHashMap<>();
+        for (TradeLogEntry entry : batch) {
+            byShop.computeIfAbsent(entry.shopId, k -> new ArrayList<>()).add(entry);
+        }
+
+        long now = System.currentTimeMillis();
+        for (Map.Entry<Long, List<TradeLogEntry>> shop : byShop.entrySet()) {
+            // Written and flushed in one go, as getting the next shop's file may close this one.
+            Writer writer = files.get(shop.getKey(), now);
+            if (writer == null) {
+                continue;
+            }
+            try {
+                for (TradeLogEntry entry : shop.getValue()) {
+                    LogRecord record = new LogRecord(Level.INFO, entry.message);
+                    record.setMillis(entry.millis);
+                    record.setLoggerName("trader" + entry.shopId);
+                    writer.write(formatter.format(record));
+                }
+                writer.flush();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Could not write to trader" + shop.getKey() + ".log", e);
+            }
+        }
+        files.closeIdle(now);
+    }
+
+    /**
+     * Writes everything queued so far.
+     */
+    static synchronized void flush() {
+        List<TradeLogEntry> batch = new ArrayList<>(queue.size());
+        queue.drainTo(batch);
+        if (!batch.isEmpty()) {
+            write(batch);
+        }
+    }
+
+    /**
+     * Stops the background thread, writes anything still queued and closes the files.  Logging again starts a new
+     * thread.
+     */
+    static void stop() {
+        Thread running;
+        synchronized (TradeLogWriter.class) {
+            running = thread;
+            thread = null;
+        }
+        if (running != null) {
+            running.interrupt();
+            try {
+                running.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        synchronized (TradeLogWriter.class) {
+            flush();
+            files.closeAll();
+        }
+    }
+
+    /**
+     * @return The number of lines dropped because the queue was full.
+     */
+    public static long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return The open log files, for their hit, miss and eviction counts.
+     */
+    public static TradeLogFiles getFiles() {
+        return files;
+    }
+}
@@ -11,6 +11,7 @@ import com.wurmonline.server.items.*;
 import com.wurmonline.server.players.PlayerInfoFactory;
 import com.wurmonline.shared.constants.ItemMaterials;
 import com.wurmonline.shared.util.MaterialUtilities;
+import mod.wurmunlimited.buyermerchant.MaterialGroups;
 import mod.wurmunlimited.buyermerchant.PriceList;
 
 import javax.annotation.Nullable;
@@ -32,25 +33,7 @@ public class AddItemToBuyerQuestion extends QuestionExtension {
     private String filter = "*";
     private ArrayList<ItemTemplate> itemTemplates = new ArrayList<>();
     private List<String> materialsList;
-    static final byte[] allMeat = new byte[] {
-        ItemMaterials.MATERIAL_FLESH,
-        ItemMaterials.MATERIAL_MEAT_BEAR,
-        ItemMaterials.MATERIAL_MEAT_BEEF,
-        ItemMaterials.MATERIAL_MEAT_CANINE,
-        ItemMaterials.MATERIAL_MEAT_CAT,
-        ItemMaterials.MATERIAL_MEAT_DRAGON,
-        ItemMaterials.MATERIAL_MEAT_FOWL,
-        ItemMaterials.MATERIAL_MEAT_GAME,
-        ItemMaterials.MATERIAL_MEAT_HORSE,
-        ItemMaterials.MATERIAL_MEAT_HUMAN,
-        ItemMaterials.MATERIAL_MEAT_HUMANOID,
-        ItemMaterials.MATERIAL_MEAT_INSECT,
-        ItemMaterials.MATERIAL_MEAT_LAMB,
-        ItemMaterials.MATERIAL_MEAT_PORK,
-        ItemMaterials.MATERIAL_MEAT_SEAFOOD,
-        ItemMaterials.MATERIAL_MEAT_SNAKE,
-        ItemMaterials.MATERIAL_MEAT_TOUGH
-    };
+    static final byte[] allMeat = MaterialGroups.getMaterials(MaterialGroups.ALL_MEAT);
 
     // Note - target is the buyer.
     AddItemToBuyerQuestion(Creature aResponder, long aTarget) {
@@ -135,7 +118,10 @@ public class AddItemToBuyerQuestion extends QuestionExtension {
                 case 1:
                 case 2:
                     String materialString = answers.getProperty("material");
-                    if (materialString != null && materialString.length() > 0) {
+                    if (wasSelected("material_group") && MaterialGroups.getGroupFor(itemTemplate) != 0) {
+                        material = MaterialGroups.getGroupFor(itemTemplate);
+                        stage = 3;
+                    } else if (materialString != null && materialString.length() > 0) {
                         try {
                             material = getMaterialFromListIndex(Integer.parseInt(materialString));
                             stage = 3;
@@ -161,7 +147,7 @@ public class AddItemToBuyerQuestion extends QuestionExtension {
             Creature buyer = Server.getInstance().getCreature(this.target);
     
             try {
-                PriceList priceList = PriceList.getPriceListFromBuyer(buyer);
+                PriceList priceList = PriceList.getPriceListForEditing(buyer);
                 // Any material is 0.  Client will not label 0 material (unknown).
                 PriceList.Entry newItem = priceList.addItem(itemTemplate.getTemplateId(), material);
                 SetBuyerPricesQuestion.setItemDetails(newItem, -1, this.getAnswer(), responder);
@@ -343,12 +329,15 @@ public class AddItemToBuyerQuestion extends QuestionExtension {
             buf.append("text{text=\"If the material you want is not in the dropdown you can list all materials.  You should almost never need to.\"}");
         buf.append("text{text=\"\"}");
         buf.append("label{text=\"Item:  ");
-        buf.append(getTemplateString(itemTemplate, (material != 0) ? material : itemTemplate.getMaterial()));
+        buf.append(getTemplateString(itemTemplate, (material != 0 && !MaterialGroups.isGroup(material)) ? material : itemTemplate.getMaterial()));
         buf.append("\"}");
 
         buf.append("harray{label{text=\"Material:  \"};dropdown{id=\"material\";options=\"");
         String defaultId = appendMaterialTypes(buf);
         buf.append("\";default=\"" + defaultId + "\";}};");
+        byte group = MaterialGroups.getGroupFor(itemTemplate);
+        if (!usingCustomMaterial && group != 0)
+            buf.append("harray{checkbox{id=\"material_group\";text=\"Accept " + MaterialGroups.getName(group) + " instead\"}};");
         buf.append("text{text=\"\"}");
 
         buf.append("text{text=\"* is a wildcard that stands in for one or more characters.\ne.g. *wood to find all types of wood.\"}");
@@ -366,7 +355,14 @@ public class AddItemToBuyerQuestion extends QuestionExtension {
 
         // New item row
         buf.append("harray{label{text=\"" + itemTemplate.getName() + "\"}};");
-        buf.append("harray{label{text=\"" + (material == 0 ? "Any" : MaterialUtilities.getMaterialString(material)) + "\"}};");
+        String materialName;
+        if (material == 0)
+            materialName = "Any";
+        else if (MaterialGroups.isGroup(material))
+            materialName = MaterialGroups.getName(material);
+        else
+            materialName = MaterialUtilities.getMaterialString(material);
+        buf.append("harray{label{text=\"" + materialName + "\"}};");
         buf.append("harray{label{text=\"" + df.format(itemTemplate.getWeightGrams() / 1000.0f) + "kg\"}};");
         buf.append("harray{input{maxchars=\"3\"; id=\"q\";text=\"" + df.format(1) + "\"};label{text=\" \"}};");
         buf.append("harray{input{maxchars=\"3\"; id=\"g\";text=\"0\"};label{text=\" \"}};");
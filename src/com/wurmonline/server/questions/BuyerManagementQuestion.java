@@ -20,6 +20,8 @@ import com.wurmonline.server.items.*;
 import com.wurmonline.server.structures.Structure;
 import com.wurmonline.server.zones.VolaTile;
 import com.wurmonline.shared.util.StringUtilities;
+import mod.wurmunlimited.buyermerchant.BuyerContracts;
+import mod.wurmunlimited.buyermerchant.BuyerRegistry;
 import mod.wurmunlimited.buyermerchant.PriceList;
 import org.jetbrains.annotations.Nullable;
 
@@ -77,7 +79,7 @@ public class BuyerManagementQuestion extends QuestionExtension implements TimeCo
             logger.log(Level.WARNING, "Trader for " + responder.getName() + " is a player? Well it can't be found. Contract ID: " + question.getTarget());
             responder.getCommunicator().sendNormalServerMessage("The contract has been damaged by water. You can't read the letters!");
             if (contract != null) {
-                contract.setData(-1, -1);
+                BuyerContracts.release(contract);
             }
 
             return;
@@ -85,7 +87,7 @@ public class BuyerManagementQuestion extends QuestionExtension implements TimeCo
             logger.log(Level.WARNING, "Trader for " + responder.getName() + " can't be found. Contract ID: " + question.getTarget());
             responder.getCommunicator().sendNormalServerMessage("The contract has been damaged by water. You can't read the letters!");
             if (contract != null) {
-                contract.setData(-1, -1);
+                BuyerContracts.release(contract);
             }
 
             return;
@@ -106,8 +108,13 @@ public class BuyerManagementQuestion extends QuestionExtension implements TimeCo
                         Server.getInstance().broadCastAction(trader.getName() + " grunts, packs " + trader.getHisHerItsString() + " things and is off.", trader, 5);
                         responder.getCommunicator().sendNormalServerMessage("You dismiss " + trader.getName() + " from " + trader.getHisHerItsString() + " post.");
                         logger.log(Level.INFO, responder.getName() + " dismisses trader " + trader.getName() + " with Contract ID: " + question.getTarget());
+                        for (Item item : trader.getInventory().getItems()) {
+                            if (PriceList.isPriceList(item))
+                                PriceList.invalidate(item);
+                        }
                         trader.destroy();
-                        contract.setData(-1, -1);
+                        BuyerRegistry.remove(trader.getWurmId());
+                        BuyerContracts.release(contract);
                     } else {
                         responder.getCommunicator().sendNormalServerMessage(trader.getName() + " is trading. Try later.");
                     }
@@ -184,7 +191,8 @@ public class BuyerManagementQuestion extends QuestionExtension implements TimeCo
                                     Economy.getEconomy().createShop(trader.getWurmId(), responder.getWurmId());
                                     // Create Price List.
                                     trader.getInventory().insertItem(PriceList.getNewBuyList());
-                                    contract.setData(trader.getWurmId());
+                                    BuyerRegistry.add(trader.getWurmId());
+                                    BuyerContracts.bind(contract, trader.getWurmId());
                                     logger.info(responder.getName() + " created a trader: " + trader);
                                 } catch (Exception var18) {
                                     responder.getCommunicator().sendAlertServerMessage("An error occurred in the rifts of the void. The trader was not created.");
@@ -203,7 +211,6 @@ public class BuyerManagementQuestion extends QuestionExtension implements TimeCo
 
     public static void dismissMerchant(@Nullable Creature dismisser, long target) {
         try {
-            int templateId = ItemTemplateFactory.getInstance().getTemplate("personal buyer contract").getTemplateId();
             Creature trader = Creatures.getInstance().getCreature(target);
             if (trader != null) {
                 if (!trader.isTrading()) {
@@ -215,12 +222,7 @@ public class BuyerManagementQuestion extends QuestionExtension implements TimeCo
                         logger.log(Level.INFO, "Buyer " + trader.getName() + " with WurmID: " + target + " dismissed by timeout");
                     }
 
-                    for (Item item : Items.getAllItems()) {
-                        if (item.getTemplateId() == templateId && item.getData() == target) {
-                            item.setData(-1, -1);
-                            break;
-                        }
-                    }
+                    BuyerContracts.release(target);
 
                     Shop shop = Economy.getEconomy().getShop(trader);
                     if (shop != null) {
@@ -237,6 +239,7 @@ public class BuyerManagementQuestion extends QuestionExtension implements TimeCo
                                     largeItems.add(realItem);
                                 } else if (PriceList.isPriceList(realItem)) {
                                     realItem.setHasNoDecay(false);
+                                    PriceList.invalidate(realItem);
                                 }
                             }
 
@@ -265,6 +268,7 @@ public class BuyerManagementQuestion extends QuestionExtension implements TimeCo
                     }
 
                     trader.destroy();
+                    BuyerRegistry.remove(trader.getWurmId());
                 } else if (dismisser != null) {
                     dismisser.getCommunicator().sendNormalServerMessage(trader.getName() + " is trading. Try later.");
                 }
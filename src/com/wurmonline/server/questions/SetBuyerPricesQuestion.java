@@ -17,6 +17,7 @@ import com.wurmonline.server.economy.MonetaryConstants;
 import com.wurmonline.server.economy.Shop;
 import com.wurmonline.server.items.BuyerTradingWindow;
 import mod.wurmunlimited.buyermerchant.PriceList;
+import mod.wurmunlimited.buyermerchant.PriceTiers;
 
 import java.text.DecimalFormat;
 import java.util.HashMap;
@@ -28,7 +29,6 @@ import java.util.logging.Logger;
 public class SetBuyerPricesQuestion extends QuestionExtension {
     private static final Logger logger = Logger.getLogger(SetBuyerPricesQuestion.class.getName());
     private final Map<PriceList.Entry, Integer> itemMap = new HashMap<>();
-    private PriceList priceList;
 
     SetBuyerPricesQuestion(Creature aResponder, long aTarget) {
         super(aResponder, "Price management", "Set prices for items", 23, aTarget);
@@ -50,8 +50,8 @@ public class SetBuyerPricesQuestion extends QuestionExtension {
         }
         if (wasSelected("sort")) {
             try {
-                priceList.sortAndSave();
-            } catch (PriceList.PriceListFullException | PriceList.PageNotAdded e) {
+                PriceList.getPriceListForEditing(Server.getInstance().getCreature(target)).sortAndSave();
+            } catch (NoSuchCreatureException | NoSuchPlayerException | PriceList.NoPriceListOnBuyer | PriceList.PriceListFullException | PriceList.PageNotAdded e) {
                 responder.getCommunicator().sendNormalServerMessage(PriceList.noPriceListFoundPlayerMessage);
                 logger.warning("Price List was not sorted correctly.");
                 e.printStackTrace();
@@ -66,8 +66,15 @@ public class SetBuyerPricesQuestion extends QuestionExtension {
                 if (shop == null) {
                     responder.getCommunicator().sendNormalServerMessage("No shop registered for that creature.");
                 } else if (shop.getOwnerId() == responder.getWurmId()) {
-                    for (PriceList.Entry item : priceList.asArray()) {
-                        int bid = itemMap.get(item);
+                    PriceList priceList = PriceList.getPriceListForEditing(trader);
+                    PriceList.Entry[] items = priceList.asArray();
+                    // From the end, so removing an entry does not shift those still to come.
+                    for (int i = items.length - 1; i >= 0; --i) {
+                        PriceList.Entry item = items[i];
+                        Integer bid = itemMap.get(item);
+                        // Added since the question was sent, so it has no answers.
+                        if (bid == null)
+                            continue;
                         if (wasSelected(bid + "remove"))
                             priceList.removeItem(item);
                         else
@@ -83,8 +90,8 @@ public class SetBuyerPricesQuestion extends QuestionExtension {
             responder.getCommunicator().sendNormalServerMessage("No such creature.");
             logger.log(Level.WARNING, responder.getName(), e);
         } catch (PriceList.PriceListFullException e) {
-            responder.getCommunicator().sendNormalServerMessage(PriceList.noSpaceOnPriceListPlayerMessage + "  Some of the prices may have been updated.");
-        } catch (PriceList.PageNotAdded e) {
+            responder.getCommunicator().sendNormalServerMessage(PriceList.noSpaceOnPriceListPlayerMessage + "  The prices have not been changed.");
+        } catch (PriceList.NoPriceListOnBuyer | PriceList.PageNotAdded e) {
             responder.getCommunicator().sendNormalServerMessage(PriceList.noPriceListFoundPlayerMessage);
             e.printStackTrace();
         }
@@ -172,7 +179,27 @@ public class SetBuyerPricesQuestion extends QuestionExtension {
                 minimumPurchase = -1;
             }
         }
-        item.updateItemDetails(ql, price, minimumPurchase);
+
+        // Tiers are left as they are if not in the answers, and removed if left blank.
+        PriceTiers tiers = item.getTiers();
+        float minQL = ql != -1 ? ql : item.getQualityLevel();
+        val = answers.getProperty(stringId + "t");
+        if (val != null) {
+            if (val.trim().isEmpty()) {
+                tiers = null;
+            } else {
+                try {
+                    tiers = PriceTiers.parse(val, minQL);
+                } catch (NumberFormatException var22) {
+                    responder.getCommunicator().sendNormalServerMessage("Failed to set the quality tiers for " + item.getName() + ". Tiers should be ql:price in irons, separated by commas and at or above the minimum QL, e.g. 50:150,70:200.");
+                }
+            }
+        }
+        if (tiers != null && !tiers.isAtOrAbove(minQL)) {
+            responder.getCommunicator().sendNormalServerMessage("Failed to set the minimum quality level for " + item.getName() + " above its quality tiers.");
+            ql = -1;
+        }
+        item.updateItemDetails(ql, price, minimumPurchase, tiers);
     }
 
     public void sendQuestion() {
@@ -184,14 +211,14 @@ public class SetBuyerPricesQuestion extends QuestionExtension {
                 if (shop == null) {
                     this.getResponder().getCommunicator().sendNormalServerMessage("No shop registered for that creature.");
                 } else if (shop.getOwnerId() == this.getResponder().getWurmId()) {
-                    priceList = PriceList.getPriceListFromBuyer(trader);
+                    PriceList priceList = PriceList.getPriceListFromBuyer(trader);
 
                     StringBuilder buf = new StringBuilder(this.getBmlHeader());
                     DecimalFormat df = new DecimalFormat("#.##");
                     if (!BuyerTradingWindow.destroyBoughtItems)
                         buf.append("text{text=\"" + trader.getName() + " has inventory space for " + (BuyerHandler.getMaxNumPersonalItems() - trader.getNumberOfShopItems()) + " more items.\"}");
                     buf.append("text{type=\"bold\";text=\"Prices for " + trader.getName() + "\"}text{text=''}");
-                    buf.append("table{rows=\"" + (priceList.size() + 1) + "\"; cols=\"9\";label{text=\"Item name\"};label{text=\"Weight\"};label{text=\"Min. QL\"};label{text=\"Gold\"};label{text=\"Silver\"};label{text=\"Copper\"};label{text=\"Iron\"}label{text=\"Min. Amount\"};label{text=\"Remove?\"}");
+                    buf.append("table{rows=\"" + (priceList.size() + 1) + "\"; cols=\"10\";label{text=\"Item name\"};label{text=\"Weight\"};label{text=\"Min. QL\"};label{text=\"Gold\"};label{text=\"Silver\"};label{text=\"Copper\"};label{text=\"Iron\"}label{text=\"Min. Amount\"};label{text=\"QL Tiers (ql:iron)\"};label{text=\"Remove?\"}");
 
                     for(PriceList.Entry item : priceList) {
                         ++idx;
@@ -204,14 +231,16 @@ public class SetBuyerPricesQuestion extends QuestionExtension {
                         buf.append("harray{input{maxchars=\"2\"; id=\"" + idx + "c\";text=\"" + change.getCopperCoins() + "\"};label{text=\" \"}};");
                         buf.append("harray{input{maxchars=\"2\"; id=\"" + idx + "i\";text=\"" + change.getIronCoins() + "\"};label{text=\" \"}};");
                         buf.append("harray{input{maxchars=\"3\"; id=\"" + idx + "p\";text=\"" + item.getMinimumPurchase() + "\"};label{text=\" \"}};");
+                        PriceTiers tiers = item.getTiers();
+                        buf.append("harray{input{maxchars=\"" + PriceTiers.MAX_TEXT_LENGTH + "\"; id=\"" + idx + "t\";text=\"" + (tiers != null ? tiers.toString() : "") + "\"};label{text=\" \"}};");
                         buf.append("harray{checkbox{id=\"" + idx + "remove\"};label{text=\" \"}};");
-                        this.itemMap.put(item, idx);
+                        this.itemMap.put(item.copy(), idx);
                     }
 
                     buf.append("}");
                     buf.append("text{text=\"\"}");
                     buf.append("harray {button{text='Save Prices';id='submit'};label{text=\" \";id=\"spacedlxg\"};button{text='Add New';id='new'}label{text=\" \";id=\"spacedlxg\"};button{text='Sort';id='sort'}}}}null;null;}");
-                    this.getResponder().getCommunicator().sendBml(525, 300, true, true, buf.toString(), 200, 200, 200, this.title);
+                    this.getResponder().getCommunicator().sendBml(650, 300, true, true, buf.toString(), 200, 200, 200, this.title);
                 } else {
                     this.getResponder().getCommunicator().sendNormalServerMessage("You don't own that shop.");
                 }
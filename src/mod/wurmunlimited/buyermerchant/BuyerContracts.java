@@ -0,0 +1,62 @@
+package mod.wurmunlimited.buyermerchant;
+
+import com.wurmonline.server.Items;
+import com.wurmonline.server.NoSuchItemException;
+import com.wurmonline.server.items.Item;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Which personal buyer contract each buyer was hired with, so dismissing a buyer does not need to search every item on
+ * the server for it.
+ *
+ * The contract's data is still the record that is saved, the index is built from it once when the server starts and
+ * kept up to date as contracts are bound and released.
+ */
+public class BuyerContracts {
+    private static final Logger logger = Logger.getLogger(BuyerContracts.class.getName());
+    // Buyer WurmId -> contract WurmId.
+    private static final Map<Long, Long> contracts = new ConcurrentHashMap<>();
+
+    static void load(int contractTemplateId) {
+        contracts.clear();
+        for (Item item : Items.getAllItems()) {
+            if (item.getTemplateId() == contractTemplateId && item.getData() != -1L)
+                contracts.put(item.getData(), item.getWurmId());
+        }
+    }
+
+    public static void bind(Item contract, long buyerId) {
+        contract.setData(buyerId);
+        contracts.put(buyerId, contract.getWurmId());
+    }
+
+    /**
+     * Frees the buyer's contract, if it still has one, so it can be used to hire another buyer.
+     */
+    public static void release(long buyerId) {
+        Long contractId = contracts.remove(buyerId);
+        if (contractId == null)
+            return;
+
+        try {
+            Item contract = Items.getItem(contractId);
+            if (contract.getData() == buyerId)
+                contract.setData(-1, -1);
+        } catch (NoSuchItemException e) {
+            logger.warning("Contract " + contractId + " for buyer " + buyerId + " no longer exists.");
+        }
+    }
+
+    /**
+     * Frees the contract from whichever buyer it was bound to, for when that buyer can no longer be found.
+     */
+    public static void release(Item contract) {
+        long buyerId = contract.getData();
+        if (buyerId != -1L)
+            contracts.remove(buyerId, contract.getWurmId());
+        contract.setData(-1, -1);
+    }
+}
@@ -28,9 +28,8 @@ import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
-public class BuyerMerchant implements WurmServerMod, Configurable, PreInitable, Initable, ServerStartedListener, ItemTemplatesCreatedListener {
+public class BuyerMerchant implements WurmServerMod, Configurable, PreInitable, Initable, ServerStartedListener, ItemTemplatesCreatedListener, PlayerLoginListener {
     private static final Logger logger = Logger.getLogger(BuyerMerchant.class.getName());
-    private static final String BUYER_NAME_PREFIX = "Buyer_";
     private int templateId;
     private boolean updateTraders = false;
     private boolean contractsOnTraders = true;
@@ -40,6 +39,8 @@ public class BuyerMerchant implements WurmServerMod, Configurable, PreInitable,
     private int maxItems = defaultMaxItems;
     private boolean applyMaxToMerchants = false;
     private int maximumPowerTurn = 1;
+    private static final long defaultBalanceDelay = 250;
+    private long balanceDelay = defaultBalanceDelay;
     // TODO - What about spells on items? - Probably going to ignore as Traders do, unless it is requested.
     // TODO - What about rarity - do later maybe?
     // TODO - Not high enough ql message to player.
@@ -111,6 +112,17 @@ public class BuyerMerchant implements WurmServerMod, Configurable, PreInitable,
                 maximumPowerTurn = 1;
             }
         }
+        val = properties.getProperty("balance_delay");
+        if (val != null && val.length() > 0) {
+            try {
+                balanceDelay = Long.parseLong(val);
+                if (balanceDelay < 0)
+                    throw new NumberFormatException();
+            } catch (NumberFormatException e) {
+                logger.warning("Invalid balance_delay option, falling back to default.");
+                balanceDelay = defaultBalanceDelay;
+            }
+        }
     }
 
     @Override
@@ -227,19 +239,36 @@ public class BuyerMerchant implements WurmServerMod, Configurable, PreInitable,
             pool.makeClass(BuyerMerchant.class.getResourceAsStream("PriceList$NoPriceListOnBuyer.class"));
             pool.makeClass(BuyerMerchant.class.getResourceAsStream("PriceList$PriceListFullException.class"));
             pool.makeClass(BuyerMerchant.class.getResourceAsStream("PriceList$PageNotAdded.class"));
+            pool.makeClass(BuyerMerchant.class.getResourceAsStream("PriceList$1.class"));
+            pool.makeClass(BuyerMerchant.class.getResourceAsStream("CustomerQueue.class"));
+            pool.makeClass(BuyerMerchant.class.getResourceAsStream("BuyerRegistry.class"));
+            pool.makeClass(BuyerMerchant.class.getResourceAsStream("BuyerContracts.class"));
+            pool.makeClass(BuyerMerchant.class.getResourceAsStream("PurchaseLedger.class"));
+            pool.makeClass(BuyerMerchant.class.getResourceAsStream("EntryStore.class"));
+            pool.makeClass(BuyerMerchant.class.getResourceAsStream("CompactInscription.class"));
+            pool.makeClass(BuyerMerchant.class.getResourceAsStream("LegacyInscription.class"));
+            pool.makeClass(BuyerMerchant.class.getResourceAsStream("PriceTiers.class"));
+            pool.makeClass(BuyerMerchant.class.getResourceAsStream("MaterialGroups.class"));
             pool.makeClass(BuyerMerchant.class.getResourceAsStream("BuyerHandler.class"));
+            pool.makeClass(BuyerMerchant.class.getResourceAsStream("BuyerMessages.class"));
+            pool.makeClass(BuyerMerchant.class.getResourceAsStream("TradePrices.class"));
             pool.makeClass(BuyerMerchant.class.getResourceAsStream("BuyerTradingWindow.class"));
+            pool.makeClass(BuyerMerchant.class.getResourceAsStream("TradeLogEntry.class"));
+            pool.makeClass(BuyerMerchant.class.getResourceAsStream("TradeLogFiles.class"));
+            pool.makeClass(BuyerMerchant.class.getResourceAsStream("TradeLogWriter.class"));
             pool.makeClass(BuyerMerchant.class.getResourceAsStream("BuyerTrade.class"));
             pool.makeClass(BuyerMerchant.class.getResourceAsStream("QuestionExtension.class"));
             pool.makeClass(BuyerMerchant.class.getResourceAsStream("BuyerManagementQuestion.class"));
             pool.makeClass(BuyerMerchant.class.getResourceAsStream("SetBuyerPricesQuestion.class"));
             pool.makeClass(BuyerMerchant.class.getResourceAsStream("AddItemToBuyerQuestion.class"));
             pool.makeClass(BuyerMerchant.class.getResourceAsStream("CopyPriceListAction.class"));
+            pool.makeClass(BuyerMerchant.class.getResourceAsStream("ContractContents.class"));
             pool.makeClass(BuyerMerchant.class.getResourceAsStream("ContractMinimum.class"));
             pool.makeClass(BuyerMerchant.class.getResourceAsStream("MinimumRequired.class"));
             pool.makeClass(BuyerMerchant.class.getResourceAsStream("MinimumRequired$1.class"));
             pool.makeClass(BuyerMerchant.class.getResourceAsStream("MinimumRequired$2.class"));
             pool.makeClass(BuyerMerchant.class.getResourceAsStream("MinimumSet.class"));
+            pool.makeClass(BuyerMerchant.class.getResourceAsStream("MinimumSolver.class"));
         } catch (NotFoundException | IOException | CannotCompileException e) {
             throw new RuntimeException(e);
         }
@@ -249,10 +278,15 @@ public class BuyerMerchant implements WurmServerMod, Configurable, PreInitable,
 
     @Override
     public void onServerStarted() {
+        HookHandles.init();
+        BuyerTrade.queuedTradeStarter = BuyerMerchant::startQueuedTrade;
+        BuyerRegistry.load();
+        BuyerContracts.load(templateId);
         ModActions.registerAction(new CopyPriceListAction(templateId));
 
         BuyerTradingWindow.freeMoney = freeMoney;
         BuyerTradingWindow.destroyBoughtItems = destroyBoughtItems;
+        BuyerHandler.balanceDelay = balanceDelay;
         if (destroyBoughtItems)
             BuyerHandler.maxPersonalItems = Integer.MAX_VALUE;
         else if (maxItems != defaultMaxItems) {
@@ -301,8 +335,16 @@ public class BuyerMerchant implements WurmServerMod, Configurable, PreInitable,
         }
     }
 
+    @Override
+    public void onPlayerLogin(Player player) {}
+
+    @Override
+    public void onPlayerLogout(Player player) {
+        CustomerQueue.leave(player);
+    }
+
     static boolean isBuyer(Creature creature) {
-        return creature.getName().startsWith(BUYER_NAME_PREFIX) && creature.getTemplate().id == CreatureTemplateIds.SALESMAN_CID;
+        return BuyerRegistry.isBuyer(creature);
     }
 
     Object TraderBookBehaviourAction(Object o, Method method, Object[] args, short action, Item target, Creature performer)
@@ -323,7 +365,21 @@ public class BuyerMerchant implements WurmServerMod, Configurable, PreInitable,
         return method.invoke(o, args);
     }
 
-    Object initiateTrade(Object o, Method method, Object[] args) throws InvocationTargetException, IllegalAccessException, ClassNotFoundException, NoSuchMethodException, InstantiationException {
+    // The same way as a player asking to trade, so the initiateTrade hook and the server's checks are used for queued
+    // players too.
+    private static boolean startQueuedTrade(Creature player, Creature buyer) {
+        try {
+            HookHandles.initiateTrade.invoke(player, buyer);
+            return player.getTrade() != null;
+        } catch (Throwable e) {
+            logger.log(Level.WARNING, "Could not start trade between " + player.getName() + " and " + buyer.getName() + ", removing them from the queue.", e);
+            CustomerQueue.leave(player);
+            player.getCommunicator().sendNormalServerMessage(buyer.getName() + " is unable to trade with you right now.");
+            return false;
+        }
+    }
+
+    Object initiateTrade(Object o, Method method, Object[] args) throws Throwable {
         Creature performer = (Creature) args[0];
         Creature opponent = (Creature) args[1];
 
@@ -337,18 +393,23 @@ public class BuyerMerchant implements WurmServerMod, Configurable, PreInitable,
         }
 
         if (isBuyer(opponent)) {
-            Class<?> BuyerTradeClass = Class.forName("com.wurmonline.server.items.BuyerTrade");
-            Object trade;
+            if (opponent.getTrade() != null) {
+                if (performer.getTrade() != opponent.getTrade())
+                    performer.getCommunicator().sendNormalServerMessage(CustomerQueue.join(opponent, performer));
+                return null;
+            }
+
+            Trade trade;
             try {
-                trade = BuyerTradeClass.getConstructor(Creature.class, Creature.class).newInstance(performer, opponent);
-            } catch (InvocationTargetException e) {
-                logger.warning(e.getCause().getMessage());
+                trade = (Trade) HookHandles.newBuyerTrade.invoke(performer, opponent);
+            } catch (PriceList.NoPriceListOnBuyer e) {
+                logger.warning(e.getMessage());
                 performer.getCommunicator().sendNormalServerMessage(opponent.getName() + " has misplaced their price list and cannot trade.");
                 return null;
             }
 
-            performer.setTrade((Trade) trade);
-            opponent.setTrade((Trade) trade);
+            performer.setTrade(trade);
+            opponent.setTrade(trade);
             opponent.getCommunicator().sendStartTrading(performer);
             performer.getCommunicator().sendStartTrading(opponent);
             opponent.addItemsToTrade();
@@ -358,24 +419,21 @@ public class BuyerMerchant implements WurmServerMod, Configurable, PreInitable,
         }
     }
 
-    Object getTradeHandler(Object o, Method method, Object[] args) throws InvocationTargetException, IllegalAccessException, ClassNotFoundException, NoSuchMethodException, InstantiationException, NoSuchFieldException {
+    Object getTradeHandler(Object o, Method method, Object[] args) throws Throwable {
         Creature creature = (Creature) o;
         if (!isBuyer(creature))
             return method.invoke(o, args);
-        Field tradeHandler = Creature.class.getDeclaredField("tradeHandler");
-        tradeHandler.setAccessible(true);
-        TradeHandler handler = (TradeHandler) tradeHandler.get(creature);
+        TradeHandler handler = (TradeHandler) HookHandles.getTradeHandler.invoke(creature);
 
         if (handler == null) {
-            Class<?> BuyerHandler = Class.forName("com.wurmonline.server.creatures.BuyerHandler");
-            handler = (TradeHandler) BuyerHandler.getConstructor(Creature.class, Trade.class).newInstance(creature, creature.getTrade());
-            tradeHandler.set(creature, handler);
+            handler = (TradeHandler) HookHandles.newBuyerHandler.invoke(creature, creature.getTrade());
+            HookHandles.setTradeHandler.invoke(creature, handler);
         }
 
         return handler;
     }
 
-    Object swapOwners(Object o, Method method, Object[] args) throws InvocationTargetException, IllegalAccessException {
+    Object swapOwners(Object o, Method method, Object[] args) throws Throwable {
         List<Item> contracts = Stream.of(((TradingWindow) o).getItems()).filter(item -> item.getTemplateId() == templateId).collect(Collectors.toList());
         contracts.forEach(item -> item.setTemplateId(ItemList.merchantContract));
 
@@ -383,16 +441,14 @@ public class BuyerMerchant implements WurmServerMod, Configurable, PreInitable,
             method.invoke(o, args);
 
             if (contracts.size() > 0) {
-                Field windowOwner = TradingWindow.class.getDeclaredField("windowowner");
-                windowOwner.setAccessible(true);
-                Creature trader = (Creature)windowOwner.get(o);
+                Creature trader = (Creature) HookHandles.getWindowOwner.invoke(o);
                 if (trader.isNpcTrader() && !trader.getShop().isPersonal()) {
                     Item contract = contracts.get(0);
                     Item newItem = ItemFactory.createItem(templateId, contract.getQualityLevel(), contract.getTemplate().getMaterial(), (byte)0, null);
                     trader.getInventory().insertItem(newItem);
                 }
             }
-        } catch (NoSuchTemplateException | FailedException | NoSuchFieldException e) {
+        } catch (NoSuchTemplateException | FailedException e) {
             logger.log(Level.WARNING, e.getMessage(), e);
         } finally {
             contracts.forEach(item -> item.setTemplateId(templateId));
@@ -411,7 +467,7 @@ public class BuyerMerchant implements WurmServerMod, Configurable, PreInitable,
         return method.invoke(o, args);
     }
 
-    Object action(Object o, Method method, Object[] args) throws InvocationTargetException, IllegalAccessException, NoSuchMethodException {
+    Object action(Object o, Method method, Object[] args) throws Throwable {
         Creature target = (Creature) args[2];
 
         if (isBuyer(target)) {
@@ -421,9 +477,7 @@ public class BuyerMerchant implements WurmServerMod, Configurable, PreInitable,
 
             switch (action) {
                 case Actions.MANAGE:
-                    Method mayDismiss = CreatureBehaviour.class.getDeclaredMethod("mayDismissMerchant", Creature.class, Creature.class);
-                    mayDismiss.setAccessible(true);
-                    if (target.isNpcTrader() && (boolean)mayDismiss.invoke(o, performer, target)) {
+                    if (target.isNpcTrader() && (boolean) HookHandles.mayDismissMerchant.invoke(o, performer, target)) {
                         // TODO - Why does this work but BuyerTrade and BuyerHandler don't?
                         BuyerManagementQuestion tmq = new BuyerManagementQuestion(performer, target);
                         tmq.sendQuestion();
@@ -438,9 +492,7 @@ public class BuyerMerchant implements WurmServerMod, Configurable, PreInitable,
                         for (Item item : target.getInventory().getItems()) {
                             if (PriceList.isPriceList(item)) {
                                 priceList = item;
-                                Method removeItem = Item.class.getDeclaredMethod("removeItem", Item.class);
-                                removeItem.setAccessible(true);
-                                removeItem.invoke(target.getInventory(), item);
+                                HookHandles.removeItem.invoke(target.getInventory(), item);
                                 break;
                             }
                         }
@@ -515,16 +567,19 @@ public class BuyerMerchant implements WurmServerMod, Configurable, PreInitable,
             for (Item item : buyer.getInventory().getItems()) {
                 if (PriceList.isPriceList(item) || PriceList.isOldPriceList(item)) {
                     item.setHasNoDecay(false);
+                    PriceList.invalidate(item);
                     break;
                 }
             }
+            Object toReturn = method.invoke(o, args);
+            BuyerRegistry.remove(buyer.getWurmId());
+            return toReturn;
         }
         return method.invoke(o, args);
     }
 
-    Object stopLoggers(Object o, Method method, Object[] args) throws InvocationTargetException, IllegalAccessException, ClassNotFoundException, NoSuchMethodException {
-        Class<?> BuyerTradingWindow = Class.forName("com.wurmonline.server.items.BuyerTradingWindow");
-        BuyerTradingWindow.getMethod("stopLoggers").invoke(null);
+    Object stopLoggers(Object o, Method method, Object[] args) throws Throwable {
+        HookHandles.stopLoggers.invoke();
         return method.invoke(o, args);
     }
 }
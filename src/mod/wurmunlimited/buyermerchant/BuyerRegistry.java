@@ -0,0 +1,95 @@
+package mod.wurmunlimited.buyermerchant;
+
+import com.wurmonline.server.creatures.Creature;
+import com.wurmonline.server.creatures.CreatureTemplateIds;
+import com.wurmonline.server.creatures.Creatures;
+import com.wurmonline.server.economy.Economy;
+import com.wurmonline.server.economy.Shop;
+
+/**
+ * The WurmIds of every buyer on the server, so the hooks can tell a buyer from any other creature with one lookup
+ * instead of checking names.
+ *
+ * Buyers are added when the server starts and when they are hired, and removed when they are dismissed or die.  The
+ * ids are kept in an open addressing table that is replaced as a whole on every change, which is rare, so lookups
+ * never need a lock.
+ */
+public class BuyerRegistry {
+    private static final String BUYER_NAME_PREFIX = "Buyer_";
+    private static final long EMPTY = 0;
+    private static volatile long[] table = new long[16];
+    private static int size = 0;
+
+    /**
+     * How buyers were told apart before the registry, for finding them when the server starts.
+     */
+    static boolean isNamedAsBuyer(Creature creature) {
+        return creature.getName().startsWith(BUYER_NAME_PREFIX) && creature.getTemplate().id == CreatureTemplateIds.SALESMAN_CID;
+    }
+
+    /**
+     * Adds every buyer with a shop.
+     */
+    static void load() {
+        for (Shop shop : Economy.getTraders()) {
+            Creature creature = Creatures.getInstance().getCreatureOrNull(shop.getWurmId());
+            if (creature != null && isNamedAsBuyer(creature))
+                add(creature.getWurmId());
+        }
+    }
+
+    public static boolean isBuyer(Creature creature) {
+        return contains(creature.getWurmId());
+    }
+
+    public static boolean contains(long wurmId) {
+        long[] ids = table;
+        int mask = ids.length - 1;
+        for (int i = index(wurmId, mask); ids[i] != EMPTY; i = (i + 1) & mask) {
+            if (ids[i] == wurmId)
+                return true;
+        }
+        return false;
+    }
+
+    public static synchronized void add(long wurmId) {
+        if (wurmId == EMPTY || contains(wurmId))
+            return;
+        long[] ids = table;
+        // Kept at most half full.
+        int capacity = (size + 1) * 2 > ids.length ? ids.length * 2 : ids.length;
+        table = rebuild(ids, capacity, wurmId, EMPTY);
+        ++size;
+    }
+
+    public static synchronized void remove(long wurmId) {
+        if (!contains(wurmId))
+            return;
+        table = rebuild(table, table.length, EMPTY, wurmId);
+        --size;
+    }
+
+    private static long[] rebuild(long[] ids, int capacity, long added, long removed) {
+        long[] rebuilt = new long[capacity];
+        int mask = capacity - 1;
+        for (long id : ids) {
+            if (id != EMPTY && id != removed)
+                insert(rebuilt, mask, id);
+        }
+        if (added != EMPTY)
+            insert(rebuilt, mask, added);
+        return rebuilt;
+    }
+
+    private static void insert(long[] ids, int mask, long wurmId) {
+        int i = index(wurmId, mask);
+        while (ids[i] != EMPTY)
+            i = (i + 1) & mask;
+        ids[i] = wurmId;
+    }
+
+    private static int index(long wurmId, int mask) {
+        long hash = wurmId * 0x9E3779B97F4A7C15L;
+        return (int)(hash ^ (hash >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,228 @@
+package mod.wurmunlimited.buyermerchant;
+
+import java.util.Arrays;
+
+/**
+ * Versioned compact format for price list page inscriptions.
+ *
+ * A page starts with a marker and version, followed by records with no separators.  Each record is the template id,
+ * material, minQL in hundredths, price (zigzag encoded as it may be -1) and minimum purchase less one.  Every value
+ * is a base-64 varint, five bits per character with the sixth bit set when more characters follow.
+ *
+ * From version 3 the minimum purchase is shifted left one bit, with the low bit set when the record has price tiers.
+ * Tiers follow as a count, then each tier's QL in hundredths above the previous tier and its zigzag price.
+ *
+ * From version 4 the minQL is shifted left one bit.  With the low bit clear the rest is the minQL in hundredths, with
+ * it set the rest is the float's bits, for minQLs such as 33.333 from legacy pages that hundredths would change.
+ * Version 2 and 3 pages are still read.  Material group ids are negative, so are stored as their unsigned byte value.
+ *
+ * Legacy pages hold one decimal "template,material,ql,price[,min]" entry per line and never start with the marker.
+ */
+class CompactInscription {
+    static final char MARKER = '~';
+    static final char VERSION = '4';
+    private static final char UNTIERED_VERSION = '2';
+    private static final char HUNDREDTHS_VERSION = '3';
+    static final int HEADER_LENGTH = 2;
+    private static final String DIGITS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+    private static final int CONTINUE = 32;
+    private static final int PAYLOAD_MASK = 31;
+    private static final int[] VALUES = new int[128];
+
+    static {
+        Arrays.fill(VALUES, -1);
+        for (int i = 0; i < DIGITS.length(); ++i)
+            VALUES[DIGITS.charAt(i)] = i;
+    }
+
+    private final CharSequence inscription;
+    private int position;
+    private int recordStart;
+    int template;
+    byte material;
+    float minQL;
+    int price;
+    int minimumPurchase;
+    PriceTiers tiers;
+    private final boolean tiered;
+    private final boolean exactQL;
+
+    /**
+     * @throws NumberFormatException if the inscription is from a newer version.
+     */
+    CompactInscription(CharSequence inscription) throws NumberFormatException {
+        if (!isCompact(inscription))
+            throw new IllegalArgumentException("Inscription is not in the compact format.");
+        char version = inscription.charAt(1);
+        if (version != VERSION && version != HUNDREDTHS_VERSION && version != UNTIERED_VERSION)
+            throw new NumberFormatException("Unknown price list version " + version);
+        this.inscription = inscription;
+        tiered = version != UNTIERED_VERSION;
+        exactQL = version == VERSION;
+        position = HEADER_LENGTH;
+    }
+
+    static boolean isCompact(CharSequence inscription) {
+        return inscription.length() >= HEADER_LENGTH && inscription.charAt(0) == MARKER;
+    }
+
+    static void appendHeader(StringBuilder sb) {
+        sb.append(MARKER).append(VERSION);
+    }
+
+    static void append(StringBuilder sb, int template, byte material, float minQL, int price, int minimumPurchase, PriceTiers tiers) {
+        appendValue(sb, template);
+        appendValue(sb, material & 0xFF);
+        appendValue(sb, encodeQL(minQL));
+        appendValue(sb, zigzag(price));
+        appendValue(sb, (minimumPurchase - 1) << 1 | (tiers != null ? 1 : 0));
+        if (tiers != null) {
+            appendValue(sb, tiers.size());
+            int previous = 0;
+            for (int i = 0; i < tiers.size(); ++i) {
+                int ql = toHundredths(tiers.getQualityLevel(i));
+                appendValue(sb, ql - previous);
+                appendValue(sb, zigzag(tiers.getPrice(i)));
+                previous = ql;
+            }
+        }
+    }
+
+    static int length(int template, byte material, float minQL, int price, int minimumPurchase, PriceTiers tiers) {
+        int length = valueLength(template) + valueLength(material & 0xFF) + valueLength(encodeQL(minQL))
+                       + valueLength(zigzag(price)) + valueLength((minimumPurchase - 1) << 1);
+        if (tiers != null) {
+            length += valueLength(tiers.size());
+            int previous = 0;
+            for (int i = 0; i < tiers.size(); ++i) {
+                int ql = toHundredths(tiers.getQualityLevel(i));
+                length += valueLength(ql - previous) + valueLength(zigzag(tiers.getPrice(i)));
+                previous = ql;
+            }
+        }
+        return length;
+    }
+
+    private static int toHundredths(float ql) {
+        return Math.round(ql * 100);
+    }
+
+    // Hundredths when that gives back exactly the same float, otherwise the float's bits.
+    private static int encodeQL(float ql) {
+        int hundredths = toHundredths(ql);
+        if (hundredths / 100f == ql)
+            return hundredths << 1;
+        return Float.floatToIntBits(ql) << 1 | 1;
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void appendValue(StringBuilder sb, int value) {
+        do {
+            int digit = value & PAYLOAD_MASK;
+            value >>>= 5;
+            if (value != 0)
+                digit |= CONTINUE;
+            sb.append(DIGITS.charAt(digit));
+        } while (value != 0);
+    }
+
+    private static int valueLength(int value) {
+        int length = 1;
+        while ((value >>>= 5) != 0)
+            ++length;
+        return length;
+    }
+
+    boolean hasNext() {
+        return position < inscription.length();
+    }
+
+    /**
+     * Position of the start of the last record read, for error messages.
+     */
+    int getRecordStart() {
+        return recordStart;
+    }
+
+    /**
+     * Reads the next record into the fields.
+     * @throws NumberFormatException if the record is truncated, contains a bad character or an invalid value.  The
+     * remainder of the page cannot be read after a truncated or corrupt record.
+     */
+    void next() throws NumberFormatException {
+        recordStart = position;
+        template = readValue();
+        if (template < 1)
+            throw new NumberFormatException("Template id was " + template);
+        int materialValue = readValue();
+        if (materialValue > 255 || (materialValue > Byte.MAX_VALUE && !MaterialGroups.isGroup((byte)materialValue)))
+            throw new NumberFormatException("Material id was " + materialValue);
+        material = (byte)materialValue;
+        int ql = readValue();
+        if (exactQL) {
+            if ((ql & 1) != 0)
+                minQL = Float.intBitsToFloat(ql >>> 1);
+            else
+                minQL = (ql >>> 1) / 100f;
+        } else {
+            minQL = ql / 100f;
+        }
+        if (!(minQL >= 0 && minQL <= 100))
+            throw new NumberFormatException("minQl was " + minQL);
+        price = unzigzag(readValue());
+        if (price < -1)
+            throw new NumberFormatException("Price was " + price);
+        int minimum = readValue();
+        tiers = null;
+        if (tiered) {
+            boolean hasTiers = (minimum & 1) != 0;
+            minimum >>>= 1;
+            if (hasTiers)
+                tiers = readTiers();
+        }
+        minimumPurchase = minimum + 1;
+        if (minimumPurchase < 1)
+            throw new NumberFormatException("Minimum purchase was " + minimumPurchase);
+    }
+
+    private PriceTiers readTiers() throws NumberFormatException {
+        int count = readValue();
+        if (count < 1 || count > PriceTiers.MAX_TIERS)
+            throw new NumberFormatException("Tier count was " + count);
+        float[] qls = new float[count];
+        int[] prices = new int[count];
+        int ql = 0;
+        for (int i = 0; i < count; ++i) {
+            ql += readValue();
+            qls[i] = ql / 100f;
+            prices[i] = unzigzag(readValue());
+        }
+        return new PriceTiers(qls, prices);
+    }
+
+    private int readValue() throws NumberFormatException {
+        int value = 0;
+        int shift = 0;
+        while (true) {
+            if (position >= inscription.length())
+                throw new NumberFormatException("Record truncated at " + position);
+            if (shift > 30)
+                throw new NumberFormatException("Value too long at " + position);
+            char c = inscription.charAt(position++);
+            int digit = c < VALUES.length ? VALUES[c] : -1;
+            if (digit == -1)
+                throw new NumberFormatException("Bad character '" + c + "' at " + (position - 1));
+            value |= (digit & PAYLOAD_MASK) << shift;
+            if ((digit & CONTINUE) == 0)
+                return value;
+            shift += 5;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package mod.wurmunlimited.buyermerchant;
+
+import com.wurmonline.server.Players;
+import com.wurmonline.server.creatures.Creature;
+import com.wurmonline.server.creatures.CreatureStatus;
+
+import javax.annotation.Nullable;
+import java.util.*;
+
+/**
+ * Players waiting to trade with a buyer that is already trading, in the order they asked.  When the buyer's trade ends
+ * the next player that is still nearby is started automatically, so nobody needs to keep asking.
+ *
+ * Waits are estimated from the buyer's last few trades.  Players are held by WurmId, so a queue never keeps a player
+ * that has logged out, and are removed from every queue when they log out.
+ */
+public class CustomerQueue {
+    private static final int RECENT_TRADES = 5;
+    // Three tiles.
+    private static final float MAX_DISTANCE = 12.0f;
+    // Weak so queues go with their buyer.
+    private static final Map<Creature, CustomerQueue> queues = Collections.synchronizedMap(new WeakHashMap<>());
+    // Player WurmIds.
+    private final Deque<Long> waiting = new ArrayDeque<>();
+    private final long[] durations = new long[RECENT_TRADES];
+    private int trades = 0;
+    private long started = 0;
+
+    private static CustomerQueue getQueue(Creature buyer) {
+        return queues.computeIfAbsent(buyer, k -> new CustomerQueue());
+    }
+
+    /**
+     * Adds the player to the end of the buyer's queue, unless they are already waiting.
+     * @return What the buyer tells the player about their place in the queue.
+     */
+    public static String join(Creature buyer, Creature player) {
+        CustomerQueue queue = getQueue(buyer);
+        synchronized (queue) {
+            queue.removeGone();
+            if (!queue.waiting.contains(player.getWurmId()))
+                queue.waiting.addLast(player.getWurmId());
+
+            int position = 1;
+            for (long id : queue.waiting) {
+                if (id == player.getWurmId())
+                    break;
+                ++position;
+            }
+
+            return buyer.getName() + " says, 'I am with another customer right now.  You are number " + position +
+                           " in line" + queue.getEstimate(position) + ".'";
+        }
+    }
+
+    @Nullable
+    private static Creature getPlayer(long wurmId) {
+        return Players.getInstance().getPlayerOrNull(wurmId);
+    }
+
+    private static boolean isGone(@Nullable Creature player) {
+        return player == null || !player.hasLink() || player.isDead();
+    }
+
+    // Players that have logged out or died since joining do not count towards anyone's place.
+    private void removeGone() {
+        waiting.removeIf(id -> isGone(getPlayer(id)));
+    }
+
+    /**
+     * Removes the player from every buyer's queue, for when they log out.
+     */
+    public static void leave(Creature player) {
+        synchronized (queues) {
+            for (CustomerQueue queue : queues.values()) {
+                synchronized (queue) {
+                    queue.waiting.remove(player.getWurmId());
+                }
+            }
+        }
+    }
+
+    private String getEstimate(int position) {
+        if (trades == 0)
+            return "";
+
+        long average = 0;
+        int count = Math.min(trades, RECENT_TRADES);
+        for (int i = 0; i < count; ++i)
+            average += durations[i];
+        average /= count;
+
+        long current = started == 0 ? 0 : Math.max(0, average - (System.currentTimeMillis() - started));
+        long wait = current + (position - 1) * average;
+        if (wait < 60_000)
+            return ", it should not be long";
+        long minutes = Math.round(wait / 60_000.0);
+        return ", it should be about " + minutes + (minutes == 1 ? " minute" : " minutes");
+    }
+
+    public static void tradeStarted(Creature buyer) {
+        CustomerQueue queue = getQueue(buyer);
+        synchronized (queue) {
+            queue.started = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Records how long the trade took and takes the next player that can still trade off the queue.  Players that
+     * have left, wandered off or started trading with someone else lose their place.
+     * @return The next player to trade with, or null if nobody is waiting.
+     */
+    public static Creature tradeEnded(Creature buyer) {
+        CustomerQueue queue = queues.get(buyer);
+        if (queue == null)
+            return null;
+
+        synchronized (queue) {
+            if (queue.started != 0) {
+                queue.durations[queue.trades % RECENT_TRADES] = System.currentTimeMillis() - queue.started;
+                ++queue.trades;
+                queue.started = 0;
+            }
+
+            Long id;
+            while ((id = queue.waiting.pollFirst()) != null) {
+                Creature next = getPlayer(id);
+                if (canTrade(buyer, next))
+                    return next;
+            }
+            return null;
+        }
+    }
+
+    private static boolean canTrade(Creature buyer, @Nullable Creature player) {
+        if (isGone(player) || player.getTrade() != null || !player.isVisibleTo(buyer))
+            return false;
+        CreatureStatus buyerStatus = buyer.getStatus();
+        CreatureStatus playerStatus = player.getStatus();
+        float x = buyerStatus.getPositionX() - playerStatus.getPositionX();
+        float y = buyerStatus.getPositionY() - playerStatus.getPositionY();
+        return x * x + y * y <= MAX_DISTANCE * MAX_DISTANCE;
+    }
+
+    /**
+     * @return The number of players waiting for the buyer.
+     */
+    public static int getWaiting(Creature buyer) {
+        CustomerQueue queue = queues.get(buyer);
+        if (queue == null)
+            return 0;
+        synchronized (queue) {
+            queue.removeGone();
+            return queue.waiting.size();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package mod.wurmunlimited.buyermerchant;
+
+import com.wurmonline.server.items.TempItem;
+
+import java.util.Arrays;
+
+/**
+ * Price list entries held as parallel arrays, one row per entry in list order.  PriceList.Entry is a view onto a row,
+ * created when needed and not kept, so rows can be moved without anything else to update.
+ */
+class EntryStore {
+    int size;
+    int[] templates;
+    byte[] materials;
+    float[] minQLs;
+    int[] prices;
+    int[] minimumPurchases;
+    // Page index, -1 if not in a list.
+    byte[] pages;
+    // Null for entries with a single price.
+    PriceTiers[] tiers;
+    TempItem[] items;
+    String[] names;
+
+    EntryStore(int capacity) {
+        templates = new int[capacity];
+        materials = new byte[capacity];
+        minQLs = new float[capacity];
+        prices = new int[capacity];
+        minimumPurchases = new int[capacity];
+        pages = new byte[capacity];
+        tiers = new PriceTiers[capacity];
+        items = new TempItem[capacity];
+        names = new String[capacity];
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > templates.length) {
+            int newCapacity = Math.max(capacity, templates.length * 2);
+            templates = Arrays.copyOf(templates, newCapacity);
+            materials = Arrays.copyOf(materials, newCapacity);
+            minQLs = Arrays.copyOf(minQLs, newCapacity);
+            prices = Arrays.copyOf(prices, newCapacity);
+            minimumPurchases = Arrays.copyOf(minimumPurchases, newCapacity);
+            pages = Arrays.copyOf(pages, newCapacity);
+            tiers = Arrays.copyOf(tiers, newCapacity);
+            items = Arrays.copyOf(items, newCapacity);
+            names = Arrays.copyOf(names, newCapacity);
+        }
+    }
+
+    private void copyRows(int from, int to, int length) {
+        System.arraycopy(templates, from, templates, to, length);
+        System.arraycopy(materials, from, materials, to, length);
+        System.arraycopy(minQLs, from, minQLs, to, length);
+        System.arraycopy(prices, from, prices, to, length);
+        System.arraycopy(minimumPurchases, from, minimumPurchases, to, length);
+        System.arraycopy(pages, from, pages, to, length);
+        System.arraycopy(tiers, from, tiers, to, length);
+        System.arraycopy(items, from, items, to, length);
+        System.arraycopy(names, from, names, to, length);
+    }
+
+    void set(int slot, int template, byte material, float minQL, int price, int minimumPurchase) {
+        templates[slot] = template;
+        materials[slot] = material;
+        minQLs[slot] = minQL;
+        prices[slot] = price;
+        minimumPurchases[slot] = minimumPurchase;
+    }
+
+    void insert(int slot, int template, byte material, float minQL, int price, int minimumPurchase, int page) {
+        ensureCapacity(size + 1);
+        copyRows(slot, slot + 1, size - slot);
+        set(slot, template, material, minQL, price, minimumPurchase);
+        pages[slot] = (byte)page;
+        tiers[slot] = null;
+        items[slot] = null;
+        names[slot] = null;
+        ++size;
+    }
+
+    void add(int template, byte material, float minQL, int price, int minimumPurchase, int page) {
+        insert(size, template, material, minQL, price, minimumPurchase, page);
+    }
+
+    void remove(int slot) {
+        copyRows(slot + 1, slot, size - slot - 1);
+        --size;
+        tiers[size] = null;
+        items[size] = null;
+        names[size] = null;
+    }
+
+    /**
+     * Rearranges the rows so that row i is the row previously at order[i].
+     */
+    void reorder(int[] order) {
+        EntryStore old = new EntryStore(templates.length);
+        old.copyFrom(this);
+        for (int i = 0; i < size; ++i) {
+            int from = order[i];
+            set(i, old.templates[from], old.materials[from], old.minQLs[from], old.prices[from], old.minimumPurchases[from]);
+            pages[i] = old.pages[from];
+            tiers[i] = old.tiers[from];
+            items[i] = old.items[from];
+            names[i] = old.names[from];
+        }
+    }
+
+    private void copyFrom(EntryStore other) {
+        System.arraycopy(other.templates, 0, templates, 0, other.size);
+        System.arraycopy(other.materials, 0, materials, 0, other.size);
+        System.arraycopy(other.minQLs, 0, minQLs, 0, other.size);
+        System.arraycopy(other.prices, 0, prices, 0, other.size);
+        System.arraycopy(other.minimumPurchases, 0, minimumPurchases, 0, other.size);
+        System.arraycopy(other.pages, 0, pages, 0, other.size);
+        System.arraycopy(other.tiers, 0, tiers, 0, other.size);
+        System.arraycopy(other.items, 0, items, 0, other.size);
+        System.arraycopy(other.names, 0, names, 0, other.size);
+        size = other.size;
+    }
+}
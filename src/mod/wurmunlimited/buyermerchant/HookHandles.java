@@ -0,0 +1,84 @@
+package mod.wurmunlimited.buyermerchant;
+
+import com.wurmonline.server.behaviours.CreatureBehaviour;
+import com.wurmonline.server.behaviours.MethodsCreatures;
+import com.wurmonline.server.creatures.Creature;
+import com.wurmonline.server.creatures.TradeHandler;
+import com.wurmonline.server.items.Item;
+import com.wurmonline.server.items.Trade;
+import com.wurmonline.server.items.TradingWindow;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The private fields, methods and Buyer classes that BuyerMerchant's hooks reach through reflection, looked up once
+ * rather than on every call.
+ *
+ * Looked up by init once the server has started, so no classes are loaded before every mod has registered its hooks.
+ */
+final class HookHandles {
+    private static final Logger logger = Logger.getLogger(HookHandles.class.getName());
+    static MethodHandle getTradeHandler;
+    static MethodHandle setTradeHandler;
+    static MethodHandle newBuyerHandler;
+    static MethodHandle newBuyerTrade;
+    static MethodHandle getWindowOwner;
+    // Takes the CreatureBehaviour it is called on, as mayDismissMerchant is an instance method.
+    static MethodHandle mayDismissMerchant;
+    static MethodHandle removeItem;
+    static MethodHandle initiateTrade;
+    static MethodHandle stopLoggers;
+
+    private HookHandles() {}
+
+    /**
+     * Looks everything up now, so a missing target is found and logged at start up rather than during a trade.
+     * @return False if any could not be found, in which case the hooks that need them will not work.
+     */
+    static boolean init() {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            Field tradeHandler = Creature.class.getDeclaredField("tradeHandler");
+            tradeHandler.setAccessible(true);
+            getTradeHandler = lookup.unreflectGetter(tradeHandler);
+            setTradeHandler = lookup.unreflectSetter(tradeHandler);
+
+            newBuyerHandler = lookup.findConstructor(Class.forName("com.wurmonline.server.creatures.BuyerHandler"),
+                    MethodType.methodType(void.class, Creature.class, Trade.class))
+                                      .asType(MethodType.methodType(TradeHandler.class, Creature.class, Trade.class));
+            newBuyerTrade = lookup.findConstructor(Class.forName("com.wurmonline.server.items.BuyerTrade"),
+                    MethodType.methodType(void.class, Creature.class, Creature.class))
+                                    .asType(MethodType.methodType(Trade.class, Creature.class, Creature.class));
+
+            Field windowOwner = TradingWindow.class.getDeclaredField("windowowner");
+            windowOwner.setAccessible(true);
+            getWindowOwner = lookup.unreflectGetter(windowOwner);
+
+            Method mayDismiss = CreatureBehaviour.class.getDeclaredMethod("mayDismissMerchant", Creature.class, Creature.class);
+            mayDismiss.setAccessible(true);
+            mayDismissMerchant = lookup.unreflect(mayDismiss)
+                                         .asType(MethodType.methodType(boolean.class, Object.class, Creature.class, Creature.class));
+
+            Method remove = Item.class.getDeclaredMethod("removeItem", Item.class);
+            remove.setAccessible(true);
+            removeItem = lookup.unreflect(remove);
+
+            Method initiate = MethodsCreatures.class.getDeclaredMethod("initiateTrade", Creature.class, Creature.class);
+            initiate.setAccessible(true);
+            initiateTrade = lookup.unreflect(initiate);
+
+            stopLoggers = lookup.findStatic(Class.forName("com.wurmonline.server.items.BuyerTradingWindow"),
+                    "stopLoggers", MethodType.methodType(void.class));
+            return true;
+        } catch (ReflectiveOperationException e) {
+            logger.log(Level.SEVERE, "Could not find a hook target, buyers will not work correctly.", e);
+            return false;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package mod.wurmunlimited.buyermerchant;
+
+/**
+ * Cursor over a legacy price list page, one decimal "template,material,ql,price[,min]" entry per line.
+ *
+ * Values are parsed in place rather than splitting the inscription, so reading a page only allocates when a line is
+ * malformed.  Blank lines are skipped.
+ */
+class LegacyInscription {
+    // Float.parseFloat is used for anything longer, or with an exponent.
+    private static final int MAX_FAST_DIGITS = 15;
+    private static final double[] POWERS_OF_TEN = new double[MAX_FAST_DIGITS + 1];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; ++i)
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+
+    private final CharSequence inscription;
+    private int position;
+    private int recordStart;
+    private int recordEnd;
+    int template;
+    byte material;
+    float minQL;
+    int price;
+    int minimumPurchase;
+
+    LegacyInscription(CharSequence inscription) {
+        this.inscription = inscription;
+    }
+
+    boolean hasNext() {
+        while (position < inscription.length() && inscription.charAt(position) == '\n')
+            ++position;
+        return position < inscription.length();
+    }
+
+    /**
+     * Position of the start of the last line read.
+     */
+    int getRecordStart() {
+        return recordStart;
+    }
+
+    /**
+     * The last line read, for error messages.
+     */
+    String getRecord() {
+        return inscription.subSequence(recordStart, recordEnd).toString();
+    }
+
+    /**
+     * Reads the next line into the fields.  The cursor always moves to the following line, so reading can continue
+     * after a malformed line.
+     * @throws NumberFormatException if the line has the wrong number of values or an invalid value, with the offset
+     * of the bad value in the message.
+     */
+    void next() throws NumberFormatException {
+        recordStart = position;
+        recordEnd = position;
+        while (recordEnd < inscription.length() && inscription.charAt(recordEnd) != '\n')
+            ++recordEnd;
+        try {
+            parseRecord();
+        } finally {
+            position = recordEnd;
+        }
+    }
+
+    private void parseRecord() throws NumberFormatException {
+        int start = position;
+        template = readInt();
+        if (template < 1)
+            throw badValue("Template id", start);
+        skipSeparator();
+        start = position;
+        int materialValue = readInt();
+        if (materialValue < 0 || materialValue > Byte.MAX_VALUE)
+            throw badValue("Material id", start);
+        material = (byte)materialValue;
+        skipSeparator();
+        start = position;
+        minQL = readFloat();
+        if (!(minQL >= 0))
+            throw badValue("minQl", start);
+        skipSeparator();
+        start = position;
+        // -1 for bad price format in menu.  Saves having to go all the way through again.
+        price = readInt();
+        if (price < -1)
+            throw badValue("Price", start);
+        minimumPurchase = 1;
+        if (position < recordEnd)
+            skipSeparator();
+        // A trailing separator with no minimum is allowed, as it was when splitting lines.
+        if (position < recordEnd) {
+            start = position;
+            minimumPurchase = readInt();
+            if (minimumPurchase < 0)
+                throw badValue("Minimum purchase", start);
+            if (minimumPurchase == 0)
+                minimumPurchase = 1;
+        }
+        if (position != recordEnd)
+            throw new NumberFormatException("Unexpected character '" + inscription.charAt(position) + "' at " + position);
+    }
+
+    private void skipSeparator() throws NumberFormatException {
+        if (position >= recordEnd)
+            throw new NumberFormatException("Missing value at " + position);
+        if (inscription.charAt(position) != ',')
+            throw new NumberFormatException("Unexpected character '" + inscription.charAt(position) + "' at " + position);
+        ++position;
+    }
+
+    private int valueEnd() {
+        int end = position;
+        while (end < recordEnd && inscription.charAt(end) != ',')
+            ++end;
+        return end;
+    }
+
+    private NumberFormatException badValue(String name, int start) {
+        return new NumberFormatException(name + " was " + inscription.subSequence(start, position) + " at " + start);
+    }
+
+    private int readInt() throws NumberFormatException {
+        int start = position;
+        int end = valueEnd();
+        boolean negative = false;
+        if (position < end && (inscription.charAt(position) == '-' || inscription.charAt(position) == '+')) {
+            negative = inscription.charAt(position) == '-';
+            ++position;
+        }
+        if (position == end)
+            throw new NumberFormatException("Missing number at " + start);
+        long value = 0;
+        while (position < end) {
+            char c = inscription.charAt(position);
+            if (c < '0' || c > '9')
+                throw new NumberFormatException("Bad character '" + c + "' at " + position);
+            value = value * 10 + (c - '0');
+            if (value > (long)Integer.MAX_VALUE + 1)
+                throw new NumberFormatException("Number too large at " + start);
+            ++position;
+        }
+        if (negative)
+            value = -value;
+        if (value > Integer.MAX_VALUE)
+            throw new NumberFormatException("Number too large at " + start);
+        return (int)value;
+    }
+
+    private float readFloat() throws NumberFormatException {
+        int start = position;
+        int end = valueEnd();
+        boolean negative = false;
+        if (position < end && (inscription.charAt(position) == '-' || inscription.charAt(position) == '+')) {
+            negative = inscription.charAt(position) == '-';
+            ++position;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = -1;
+        while (position < end) {
+            char c = inscription.charAt(position);
+            if (c == '.' && fractionDigits == -1) {
+                fractionDigits = 0;
+            } else if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                ++digits;
+                if (fractionDigits != -1)
+                    ++fractionDigits;
+            } else {
+                break;
+            }
+            ++position;
+        }
+
+        if (position != end || digits > MAX_FAST_DIGITS) {
+            // Exponents and other unusual forms.
+            position = end;
+            try {
+                return Float.parseFloat(inscription.subSequence(start, end).toString());
+            } catch (NumberFormatException e) {
+                throw new NumberFormatException("Bad number at " + start);
+            }
+        }
+        if (digits == 0)
+            throw new NumberFormatException("Missing number at " + start);
+        // A single correctly rounded division, so narrowing to float gives the same result as Float.parseFloat.
+        double value = fractionDigits > 0 ? mantissa / POWERS_OF_TEN[fractionDigits] : mantissa;
+        return (float)(negative ? -value : value);
+    }
+}
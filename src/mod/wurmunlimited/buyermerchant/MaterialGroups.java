@@ -0,0 +1,93 @@
+package mod.wurmunlimited.buyermerchant;
+
+import com.wurmonline.server.behaviours.MethodsItems;
+import com.wurmonline.server.items.ItemTemplate;
+import com.wurmonline.shared.constants.ItemMaterials;
+
+/**
+ * Families of materials that a single price list entry can accept, e.g. all meats.
+ *
+ * A group is stored in an entry's material as a negative id, which no real material uses.  Each group has a
+ * precomputed bitset over the 256 material values so matching an item is a single bit test.
+ */
+public class MaterialGroups {
+    public static final byte ALL_MEAT = -1;
+    public static final byte ALL_METAL = -2;
+    public static final byte ALL_WOOD = -3;
+    private static final int GROUP_COUNT = 3;
+    private static final String[] names = new String[] {
+            "any meat",
+            "any metal",
+            "any normal wood"
+    };
+    private static final byte[] meat = new byte[] {
+            ItemMaterials.MATERIAL_FLESH,
+            ItemMaterials.MATERIAL_MEAT_BEAR,
+            ItemMaterials.MATERIAL_MEAT_BEEF,
+            ItemMaterials.MATERIAL_MEAT_CANINE,
+            ItemMaterials.MATERIAL_MEAT_CAT,
+            ItemMaterials.MATERIAL_MEAT_DRAGON,
+            ItemMaterials.MATERIAL_MEAT_FOWL,
+            ItemMaterials.MATERIAL_MEAT_GAME,
+            ItemMaterials.MATERIAL_MEAT_HORSE,
+            ItemMaterials.MATERIAL_MEAT_HUMAN,
+            ItemMaterials.MATERIAL_MEAT_HUMANOID,
+            ItemMaterials.MATERIAL_MEAT_INSECT,
+            ItemMaterials.MATERIAL_MEAT_LAMB,
+            ItemMaterials.MATERIAL_MEAT_PORK,
+            ItemMaterials.MATERIAL_MEAT_SEAFOOD,
+            ItemMaterials.MATERIAL_MEAT_SNAKE,
+            ItemMaterials.MATERIAL_MEAT_TOUGH
+    };
+    private static final byte[][] materials = new byte[][] {
+            meat,
+            MethodsItems.getAllMetalTypes(),
+            MethodsItems.getAllNormalWoodTypes()
+    };
+    // Group index -> four longs covering material values 0-255.
+    private static final long[][] bits = new long[GROUP_COUNT][4];
+
+    static {
+        for (int group = 0; group < GROUP_COUNT; ++group) {
+            for (byte material : materials[group]) {
+                int value = material & 0xFF;
+                bits[group][value >>> 6] |= 1L << value;
+            }
+        }
+    }
+
+    public static boolean isGroup(byte material) {
+        return material < 0 && material >= -GROUP_COUNT;
+    }
+
+    /**
+     * @return Whether the material is part of the group, always false if group is not a group id.
+     */
+    public static boolean contains(byte group, byte material) {
+        if (!isGroup(group))
+            return false;
+        int value = material & 0xFF;
+        return (bits[-group - 1][value >>> 6] & (1L << value)) != 0;
+    }
+
+    public static String getName(byte group) {
+        return names[-group - 1];
+    }
+
+    public static byte[] getMaterials(byte group) {
+        return materials[-group - 1].clone();
+    }
+
+    /**
+     * @return The group that items of this template are usually made from, or 0 if there is none.
+     */
+    public static byte getGroupFor(ItemTemplate template) {
+        if (template.isMeat())
+            return ALL_MEAT;
+        if (template.isMetal())
+            return ALL_METAL;
+        if (template.isWood())
+            return ALL_WOOD;
+        return 0;
+    }
+}
@@ -12,9 +12,11 @@ import org.jetbrains.annotations.NotNull;
 import javax.annotation.Nullable;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 public class PriceList implements Iterable<PriceList.Entry> {
@@ -34,10 +36,28 @@ public class PriceList implements Iterable<PriceList.Entry> {
     private static final int MAX_PAGES_IN_BOOK = 10;
     private Item priceListItem;
     private int pageCount = 1;
-    private Map<Entry, TempItem> prices = new HashMap<>();
-    private List<Entry> pricesOrder = new ArrayList<>();
+    // Entries in list order.
+    private final EntryStore entries = new EntryStore(16);
+    // Template id -> material (0 for Any, negative for a MaterialGroups id) -> entry slots by minQL descending.
+    // Rebuilt lazily after any change.
+    private Map<Integer, Map<Byte, int[]>> index;
+    // Incremented on any change to entry values, so prices worked out from the list can be checked.
+    private int modifications = 0;
     private boolean createdItems = false;
-    private int lastInscriptionLength;
+    // Pages in order, with the inscribed length of each and which need writing on the next save.
+    private final List<Item> pages = new ArrayList<>();
+    private int[] pageLengths = new int[MAX_PAGES_IN_BOOK];
+    private final BitSet dirtyPages = new BitSet(MAX_PAGES_IN_BOOK);
+    // Page WurmId -> inscription the entries were read from or last written as.
+    private final Map<Long, String> inscriptionSnapshot = new HashMap<>();
+    private boolean unsaved = false;
+    // Open trades showing this list's display items, which are kept until the last of them ends once it is replaced.
+    private int trades = 0;
+    private boolean replaced = false;
+    // Display items of changed or removed entries, waiting for the open trades that may show them to end.
+    private final List<TempItem> discardedItems = new ArrayList<>();
+    // Parsed price lists, keyed on the price list item's WurmId.
+    private static final Map<Long, PriceList> priceLists = new ConcurrentHashMap<>();
     public static final String noPriceListFoundPlayerMessage = "The buyer fumbles in their pockets but fails to find their price list.";
     public static final String noSpaceOnPriceListPlayerMessage = "The buyer has run out of space on their price list and cannot record the changes.  Try removing some items from the list.";
     public static final String couldNotCreateItemPlayerMessage = "The buyer looks at you confused, as if not understanding what your saying.";
@@ -46,102 +66,226 @@ public class PriceList implements Iterable<PriceList.Entry> {
     // Causes testIncorrectPriceListInscriptionRemovesEntry to fail if final.
     private static Logger logger = Logger.getLogger(PriceList.class.getName());
 
+    /**
+     * A view onto one row of the list's entries, only valid until an entry is next added or removed, or the list
+     * sorted.  Views are not kept, so look the entry up again after any of those.  Entries not in the list, or removed
+     * from it, keep their values in their own fields.
+     */
     public class Entry implements Comparable<Entry> {
-        int template;
-        // Using 0 as substitute for Any.
-        byte material;
-        float minQL;
-        int price;
-        int minimumPurchase;
+        // -1 if not in the list.
+        int slot;
+        private int template;
+        private byte material;
+        private float minQL;
+        private int price;
+        private int minimumPurchase;
+        private PriceTiers tiers;
+        private String name;
+
         Entry(String entry) throws NumberFormatException {
-            String[] entries = entry.split(",");
-            template = Integer.parseInt(entries[0]);
-            if (template < 1)
-                throw new NumberFormatException("Template id was " + entries[0]);
-            material = Byte.parseByte(entries[1]);
-            if (material < (byte)0)
-                throw new NumberFormatException("Material id was " + entries[1]);
-            minQL = Float.parseFloat(entries[2]);
-            if (minQL < 0)
-                throw new NumberFormatException("minQl was " + entries[2]);
-            // -1 for bad price format in menu.  Saves having to go all the way through again.
-            price = Integer.parseInt(entries[3]);
-            if (price < -1)
-                throw new NumberFormatException("Price was " + entries[3]);
-            if (entries.length == 5) {
-                minimumPurchase = Integer.parseInt(entries[4]);
-                if (minimumPurchase < 0)
-                    throw new NumberFormatException("minQl was " + entries[4]);
-            }
-            if (minimumPurchase == 0)
-                minimumPurchase = 1;
+            LegacyInscription reader = new LegacyInscription(entry);
+            reader.next();
+            detach(reader.template, reader.material, reader.minQL, reader.price, reader.minimumPurchase, null, null);
         }
 
         Entry(int template, byte material, float minQL, int price, int minimumPurchase) {
-            update(template, material, minQL, price, minimumPurchase);
+            detach(template, material, minQL, price, minimumPurchase, null, null);
         }
 
-        private void update(int template, byte material, float minQL, int price, int minimumPurchase) {
+        Entry(int slot) {
+            this.slot = slot;
+        }
+
+        private void detach(int template, byte material, float minQL, int price, int minimumPurchase, PriceTiers tiers, String name) {
+            slot = -1;
             this.template = template;
             this.material = material;
             this.minQL = minQL;
             this.price = price;
             this.minimumPurchase = minimumPurchase;
+            this.tiers = tiers;
+            this.name = name;
+        }
+
+        private void detach() {
+            detach(getTemplateId(), getMaterial(), getQualityLevel(), getPrice(), getMinimumPurchase(), getTiers(), entries.names[slot]);
+        }
+
+        /**
+         * @return An entry with the same values that is not in the list, to keep after the list changes.
+         */
+        public Entry copy() {
+            Entry copy = new Entry(getTemplateId(), getMaterial(), getQualityLevel(), getPrice(), getMinimumPurchase());
+            copy.tiers = getTiers();
+            return copy;
         }
 
+        boolean isListed() {
+            return slot >= 0;
+        }
+
+        int getPage() {
+            return entries.pages[slot];
+        }
+
+        private void update(int template, byte material, float minQL, int price, int minimumPurchase, PriceTiers tiers) {
+            boolean renamed = template != getTemplateId() || material != getMaterial();
+            if (isListed()) {
+                if (renamed)
+                    entries.names[slot] = null;
+                entries.set(slot, template, material, minQL, price, minimumPurchase);
+                entries.tiers[slot] = tiers;
+                index = null;
+                ++modifications;
+            } else {
+                detach(template, material, minQL, price, minimumPurchase, tiers, renamed ? null : name);
+            }
+        }
+
+        @Nullable
         public Item getItem() {
+            if (!isListed())
+                return null;
             if (!createdItems)
                 getItems();
-            return prices.get(this);
+            return entries.items[slot];
         }
 
         public String getName() {
-            try {
-                ItemTemplate temp = ItemTemplateFactory.getInstance().getTemplate(template);
-                return ItemFactory.generateName(temp, material);
-            } catch (NoSuchTemplateException e) {
-                e.printStackTrace();
-                return "UnknownItem";
+            String name = isListed() ? entries.names[slot] : this.name;
+            if (name == null) {
+                int template = getTemplateId();
+                try {
+                    ItemTemplate temp = ItemTemplateFactory.getInstance().getTemplate(template);
+                    byte material = getMaterial();
+                    if (MaterialGroups.isGroup(material))
+                        name = ItemFactory.generateName(temp, (byte)0) + ", " + MaterialGroups.getName(material);
+                    else
+                        name = ItemFactory.generateName(temp, material);
+                } catch (NoSuchTemplateException e) {
+                    logger.warning("Template " + template + " not found for price list entry.");
+                    name = "UnknownItem";
+                }
+                if (isListed())
+                    entries.names[slot] = name;
+                else
+                    this.name = name;
             }
+            return name;
+        }
+
+        int getInscriptionLength() {
+            return CompactInscription.length(getTemplateId(), getMaterial(), getQualityLevel(), getPrice(), getMinimumPurchase(), getTiers());
         }
 
         public String toString() {
-            if (minimumPurchase != 1)
-                return Joiner.on(",").join(template, material, minQL, price, minimumPurchase);
-            return Joiner.on(",").join(template, material, minQL, price);
+            if (getMinimumPurchase() != 1)
+                return Joiner.on(",").join(getTemplateId(), getMaterial(), getQualityLevel(), getPrice(), getMinimumPurchase());
+            return Joiner.on(",").join(getTemplateId(), getMaterial(), getQualityLevel(), getPrice());
         }
 
         public void updateItemDetails(float minQL, int price, int minimumPurchase) throws PriceListFullException {
-            updateItem(template, material, minQL, price, minimumPurchase);
+            updateItem(getTemplateId(), getMaterial(), minQL, price, minimumPurchase, getTiers());
+        }
+
+        /**
+         * @param tiers Prices for higher QLs, or null for a single price.
+         */
+        public void updateItemDetails(float minQL, int price, int minimumPurchase, @Nullable PriceTiers tiers) throws PriceListFullException {
+            updateItem(getTemplateId(), getMaterial(), minQL, price, minimumPurchase, tiers);
         }
 
         public void updateItem(int template, byte material, float minQL, int price, int minimumPurchase) throws PriceListFullException {
+            updateItem(template, material, minQL, price, minimumPurchase, getTiers());
+        }
+
+        private void updateItem(int template, byte material, float minQL, int price, int minimumPurchase, PriceTiers tiers) throws PriceListFullException {
             if (minQL < 0 || minQL > 100)
-                minQL = this.minQL;
-            int oldLength = toString().length();
-            int newLength = new Entry(template, material, minQL, price, minimumPurchase).toString().length();
-            if (lastInscriptionLength + (newLength - oldLength) > MAX_INSCRIPTION_LENGTH)
-                throw new PriceListFullException("Not enough space for that update.");
+                minQL = getQualityLevel();
             if (minimumPurchase == -1)
-                minimumPurchase = this.minimumPurchase;
-            update(template, material, minQL, price, minimumPurchase);
-            lastInscriptionLength += newLength - oldLength;
+                minimumPurchase = getMinimumPurchase();
+            // Unchanged entries should not cause their page to be written again.
+            if (template == getTemplateId() && material == getMaterial() && Float.compare(minQL, getQualityLevel()) == 0
+                        && price == getPrice() && minimumPurchase == getMinimumPurchase() && Objects.equals(tiers, getTiers()))
+                return;
+            if (isListed()) {
+                int page = getPage();
+                int oldLength = getInscriptionLength();
+                int newLength = CompactInscription.length(template, material, minQL, price, minimumPurchase, tiers);
+                if (pageLengths[page] + (newLength - oldLength) > MAX_INSCRIPTION_LENGTH) {
+                    // The entries from here on are spread over the following pages again, so the list stays in order.
+                    if (!layoutPagesFrom(page, slot, newLength))
+                        throw new PriceListFullException("Not enough space for that update.");
+                } else {
+                    pageLengths[page] += newLength - oldLength;
+                }
+                dirtyPages.set(getPage());
+            }
+            boolean priceOnly = template == getTemplateId() && material == getMaterial()
+                                        && Float.compare(minQL, getQualityLevel()) == 0
+                                        && minimumPurchase == getMinimumPurchase();
+            update(template, material, minQL, price, minimumPurchase, tiers);
+            refreshItem(priceOnly);
+            unsaved = true;
+        }
+
+        // Keeps the display item in step with the entry, as it is kept between trades.
+        private void refreshItem(boolean priceOnly) {
+            if (!isListed())
+                return;
+            TempItem item = entries.items[slot];
+            if (item == null)
+                return;
+            if (priceOnly) {
+                item.setPrice(getPrice());
+            } else {
+                discardItem(item);
+                entries.items[slot] = null;
+                if (createdItems) {
+                    try {
+                        entries.items[slot] = createItem(this);
+                    } catch (IOException | NoSuchTemplateException e) {
+                        logger.warning("Error when creating TempItem for trading.  Skipping entry.");
+                        e.printStackTrace();
+                    }
+                }
+            }
         }
 
         public int getTemplateId() {
-            return template;
+            return isListed() ? entries.templates[slot] : template;
+        }
+
+        // Using 0 as substitute for Any, or a MaterialGroups id.
+        public byte getMaterial() {
+            return isListed() ? entries.materials[slot] : material;
         }
 
         public float getQualityLevel() {
-            return minQL;
+            return isListed() ? entries.minQLs[slot] : minQL;
         }
 
         public int getPrice() {
-            return price;
+            return isListed() ? entries.prices[slot] : price;
+        }
+
+        /**
+         * @return The price for an item of the given QL, from the tiers if the entry has any.
+         */
+        public int getPrice(float ql) {
+            PriceTiers tiers = getTiers();
+            if (tiers == null)
+                return getPrice();
+            return tiers.getPrice(ql, getPrice());
+        }
+
+        @Nullable
+        public PriceTiers getTiers() {
+            return isListed() ? entries.tiers[slot] : tiers;
         }
 
         public int getMinimumPurchase() {
-            return minimumPurchase;
+            return isListed() ? entries.minimumPurchases[slot] : minimumPurchase;
         }
 
         @Override
@@ -151,16 +295,18 @@ public class PriceList implements Iterable<PriceList.Entry> {
             if (o == null || getClass() != o.getClass())
                 return false;
             Entry entry = (Entry)o;
-            return template == entry.template &&
-                           material == entry.material &&
-                           Float.compare(entry.minQL, minQL) == 0 &&
-                           minimumPurchase == entry.minimumPurchase;
+            return getTemplateId() == entry.getTemplateId() &&
+                           getMaterial() == entry.getMaterial() &&
+                           Float.compare(entry.getQualityLevel(), getQualityLevel()) == 0 &&
+                           getMinimumPurchase() == entry.getMinimumPurchase();
         }
 
         @Override
         public int hashCode() {
-            //noinspection ObjectInstantiationInEqualsHashCode
-            return Objects.hash(template, material, minQL, minimumPurchase);
+            int result = getTemplateId();
+            result = 31 * result + getMaterial();
+            result = 31 * result + Float.floatToIntBits(getQualityLevel());
+            return 31 * result + getMinimumPurchase();
         }
 
         /**
@@ -169,16 +315,9 @@ public class PriceList implements Iterable<PriceList.Entry> {
          */
         @Override
         public int compareTo(@NotNull Entry other) {
-            ItemTemplateFactory factory = ItemTemplateFactory.getInstance();
-            int compare = 0;
-            try {
-                compare = getName().compareTo(ItemFactory.generateName(factory.getTemplate(other.template), other.material));
-                if (compare == 0) {
-                    compare = Float.compare(other.minQL, minQL);
-                }
-            } catch (NoSuchTemplateException e) {
-                logger.warning("Template not found during Entry comparison.");
-                e.printStackTrace();
+            int compare = getName().compareTo(other.getName());
+            if (compare == 0) {
+                compare = Float.compare(other.getQualityLevel(), getQualityLevel());
             }
 
             return compare;
@@ -221,13 +360,16 @@ public class PriceList implements Iterable<PriceList.Entry> {
         // Rename old price lists.
         if (priceList.getDescription().equals(PRICE_LIST_DESCRIPTION))
             priceList.setDescription(BUY_LIST_DESCRIPTION);
+        pageLengths[0] = CompactInscription.HEADER_LENGTH;
 
-        List<Item> pages = new ArrayList<>(priceList.getItems());
+        pages.addAll(priceList.getItems());
 
         if (pages.size() == 0)
             return;
 
         pageCount = pages.size();
+        if (pageCount > pageLengths.length)
+            pageLengths = new int[pageCount];
         pages.sort((item1, item2) -> {
             Matcher page1 = pageName.matcher(item1.getDescription());
             Matcher page2 = pageName.matcher(item2.getDescription());
@@ -239,34 +381,65 @@ public class PriceList implements Iterable<PriceList.Entry> {
             if (!page1.group(1).equals(page2.group(1)))
                 return page1.group(1).compareTo(page2.group(1));
 
-            return page1.group(2).compareTo(page2.group(2));
+            return Integer.compare(Integer.parseInt(page1.group(2)), Integer.parseInt(page2.group(2)));
         });
 
         boolean error = false;
-        for (Item page : pages) {
+        boolean legacyFormat = false;
+        boolean overfull = false;
+        for (int i = 0; i < pages.size(); ++i) {
+            Item page = pages.get(i);
+            pageLengths[i] = CompactInscription.HEADER_LENGTH;
             InscriptionData inscription = page.getInscription();
             if (inscription != null) {
                 String inscriptionString = inscription.getInscription();
-                lastInscriptionLength = inscriptionString.length();
-                if (lastInscriptionLength > 0) {
-                    for (String entry : inscriptionString.split("\n")) {
-                        Entry newEntry = null;
+                if (CompactInscription.isCompact(inscriptionString)) {
+                    CompactInscription reader = null;
+                    try {
+                        reader = new CompactInscription(inscriptionString);
+                        while (reader.hasNext()) {
+                            reader.next();
+                            entries.add(reader.template, reader.material, reader.minQL, reader.price, reader.minimumPurchase, i);
+                            entries.tiers[entries.size - 1] = reader.tiers;
+                            pageLengths[i] += CompactInscription.length(reader.template, reader.material, reader.minQL, reader.price, reader.minimumPurchase, reader.tiers);
+                        }
+                    } catch (NumberFormatException e) {
+                        error = true;
+                        dirtyPages.set(i);
+                        logger.warning("Bad Price List Entry - " + page.getDescription() + " at " + (reader != null ? reader.getRecordStart() : 0) + " - Removing rest of page.");
+                        e.printStackTrace();
+                    }
+                } else if (inscriptionString.length() > 0) {
+                    legacyFormat = true;
+                    LegacyInscription reader = new LegacyInscription(inscriptionString);
+                    while (reader.hasNext()) {
                         try {
-                            newEntry = new Entry(entry);
+                            reader.next();
                         } catch (NumberFormatException e) {
                             error = true;
-                            logger.warning("Bad Price List Entry - " + entry + " - Removing.");
+                            logger.warning("Bad Price List Entry - " + reader.getRecord() + " - Removing.");
                             e.printStackTrace();
+                            continue;
                         }
-                        if (newEntry != null) {
-                            prices.put(newEntry, null);
-                            pricesOrder.add(newEntry);
-                        }
+                        entries.add(reader.template, reader.material, reader.minQL, reader.price, reader.minimumPurchase, i);
                     }
                 }
+            } else {
+                dirtyPages.set(i);
             }
+            if (pageLengths[i] > MAX_INSCRIPTION_LENGTH)
+                overfull = true;
         }
 
+        // Legacy pages are rewritten in the compact format on the next save.
+        if (legacyFormat) {
+            logger.fine("Price list " + priceList.getWurmId() + " is in the legacy format.");
+            layoutPages();
+        } else if (overfull) {
+            layoutPages();
+        }
+        takeInscriptionSnapshot();
+
         if (error) {
             try {
                 savePriceList();
@@ -279,6 +452,115 @@ public class PriceList implements Iterable<PriceList.Entry> {
         }
     }
 
+    /**
+     * Reassigns every entry to pages in list order and marks all pages as dirty.
+     */
+    private void layoutPages() {
+        pageCount = 1;
+        pageLengths[0] = CompactInscription.HEADER_LENGTH;
+        for (int i = 0; i < entries.size; ++i) {
+            int length = getInscriptionLength(i);
+            if (pageLengths[pageCount - 1] + length > MAX_INSCRIPTION_LENGTH) {
+                if (pageCount == pageLengths.length)
+                    pageLengths = Arrays.copyOf(pageLengths, pageCount * 2);
+                pageLengths[pageCount++] = CompactInscription.HEADER_LENGTH;
+            }
+            entries.pages[i] = (byte)(pageCount - 1);
+            pageLengths[pageCount - 1] += length;
+        }
+        dirtyPages.set(0, Math.max(pageCount, pages.size()));
+    }
+
+    /**
+     * Finds a page with room for an entry, preferring the last page, then a new page, then any earlier page.  A new
+     * page is counted straight away, but is only created on save.
+     */
+    private int findPageWithSpace(int length) throws PriceListFullException {
+        if (pageLengths[pageCount - 1] + length <= MAX_INSCRIPTION_LENGTH)
+            return pageCount - 1;
+        if (pageCount < MAX_PAGES_IN_BOOK) {
+            pageLengths[pageCount] = CompactInscription.HEADER_LENGTH;
+            return pageCount++;
+        }
+        for (int i = 0; i < pageCount - 1; ++i) {
+            if (pageLengths[i] + length <= MAX_INSCRIPTION_LENGTH)
+                return i;
+        }
+        throw new PriceListFullException("PriceList has too many items to inscribe.");
+    }
+
+    private int getInscriptionLength(int slot) {
+        return CompactInscription.length(entries.templates[slot], entries.materials[slot], entries.minQLs[slot], entries.prices[slot], entries.minimumPurchases[slot], entries.tiers[slot]);
+    }
+
+    // Entries are kept grouped by page so each page is written in the order it is displayed.
+    private int getInsertionSlot(int page) {
+        for (int i = entries.size - 1; i >= 0; --i) {
+            if (entries.pages[i] <= page)
+                return i + 1;
+        }
+        return 0;
+    }
+
+    /**
+     * Assigns the entries from firstPage on to pages again in list order, with the entry at changedSlot taking
+     * changedLength.  Only pages whose entries change are marked dirty.
+     * @return False, with nothing changed, if the entries would need more pages than a book has.
+     */
+    private boolean layoutPagesFrom(int firstPage, int changedSlot, int changedLength) {
+        int first = 0;
+        while (first < entries.size && entries.pages[first] < firstPage)
+            ++first;
+        byte[] newPages = new byte[entries.size - first];
+        int[] newLengths = new int[Math.max(MAX_PAGES_IN_BOOK, pageLengths.length)];
+        int page = firstPage;
+        newLengths[page] = CompactInscription.HEADER_LENGTH;
+        for (int i = first; i < entries.size; ++i) {
+            int length = i == changedSlot ? changedLength : getInscriptionLength(i);
+            if (newLengths[page] + length > MAX_INSCRIPTION_LENGTH) {
+                if (++page == MAX_PAGES_IN_BOOK)
+                    return false;
+                newLengths[page] = CompactInscription.HEADER_LENGTH;
+            }
+            newPages[i - first] = (byte)page;
+            newLengths[page] += length;
+        }
+
+        for (int i = first; i < entries.size; ++i) {
+            if (entries.pages[i] != newPages[i - first]) {
+                dirtyPages.set(entries.pages[i]);
+                dirtyPages.set(newPages[i - first]);
+                entries.pages[i] = newPages[i - first];
+            }
+        }
+        System.arraycopy(newLengths, firstPage, pageLengths, firstPage, page - firstPage + 1);
+        // Any pages left after the last are empty, and removed on save.
+        for (int i = page + 1; i < pageCount; ++i)
+            pageLengths[i] = CompactInscription.HEADER_LENGTH;
+        pageCount = Math.max(pageCount, page + 1);
+        return true;
+    }
+
+    /**
+     * Joins the last page onto the end of the page before it while all its entries fit, so that the page can be
+     * removed.  Entries are grouped by page in list order, so this does not change their order.
+     */
+    private void reclaimLastPages() {
+        while (pageCount > 1) {
+            int last = pageCount - 1;
+            int length = pageLengths[last] - CompactInscription.HEADER_LENGTH;
+            if (pageLengths[last - 1] + length > MAX_INSCRIPTION_LENGTH)
+                return;
+            for (int i = entries.size - 1; i >= 0 && entries.pages[i] == last; --i)
+                entries.pages[i] = (byte)(last - 1);
+            if (length > 0) {
+                pageLengths[last - 1] += length;
+                dirtyPages.set(last - 1);
+            }
+            --pageCount;
+        }
+    }
+
     private static Item getNewPriceList() throws FailedException, NoSuchTemplateException {
         Item priceList = ItemFactory.createItem(ItemList.book, 10, null);
         priceList.setHasNoDecay(true);
@@ -306,7 +588,12 @@ public class PriceList implements Iterable<PriceList.Entry> {
     public static PriceList getPriceListFromBuyer(Creature creature) throws NoPriceListOnBuyer {
         for (Item item : creature.getInventory().getItems()) {
             if (isPriceList(item)) {
-                return new PriceList(item);
+                PriceList priceList = priceLists.get(item.getWurmId());
+                if (priceList == null || !priceList.isCurrentFor(item)) {
+                    priceList = new PriceList(item);
+                    cache(item, priceList);
+                }
+                return priceList;
             } else if (isOldPriceList(item)) {
                 try {
                     return new PriceList(replaceOldPriceList(item));
@@ -319,26 +606,150 @@ public class PriceList implements Iterable<PriceList.Entry> {
         throw new NoPriceListOnBuyer(creature.getWurmId());
     }
 
+    /**
+     * A parsed copy of the buyer's price list of its own, for questions that change it.  Trades do not see the changes
+     * until it is saved, which makes it the copy they use.
+     */
+    public static PriceList getPriceListForEditing(Creature creature) throws NoPriceListOnBuyer {
+        return new PriceList(getPriceListFromBuyer(creature).priceListItem);
+    }
+
+    /**
+     * Removes any parsed copy of the price list, use when the price list item is replaced or destroyed.
+     */
+    public static void invalidate(Item priceList) {
+        PriceList previous = priceLists.remove(priceList.getWurmId());
+        if (previous != null)
+            previous.replaced();
+    }
+
+    private static void cache(Item item, PriceList priceList) {
+        PriceList previous = priceLists.put(item.getWurmId(), priceList);
+        if (previous != null && previous != priceList)
+            previous.replaced();
+    }
+
+    // The display items of a replaced copy are no longer used by any new trade, but may still be in an open one.
+    private void replaced() {
+        replaced = true;
+        if (trades == 0)
+            destroyItems();
+    }
+
+    /**
+     * Call when a trade starts showing this list's display items, and tradeEnded when it finishes, so they are not
+     * destroyed while still in its windows.
+     */
+    public void tradeStarted() {
+        ++trades;
+    }
+
+    public void tradeEnded() {
+        if (trades > 0)
+            --trades;
+        if (trades == 0) {
+            destroyDiscardedItems();
+            if (replaced)
+                destroyItems();
+        }
+    }
+
+    // An open trade may still be showing the item, so it is only destroyed once they have all ended.
+    private void discardItem(TempItem item) {
+        if (trades > 0)
+            discardedItems.add(item);
+        else
+            Items.destroyItem(item.getWurmId());
+    }
+
+    private void destroyDiscardedItems() {
+        for (TempItem item : discardedItems)
+            Items.destroyItem(item.getWurmId());
+        discardedItems.clear();
+    }
+
+    private void takeInscriptionSnapshot() {
+        inscriptionSnapshot.clear();
+        for (Item page : priceListItem.getItems()) {
+            InscriptionData inscription = page.getInscription();
+            inscriptionSnapshot.put(page.getWurmId(), inscription != null ? inscription.getInscription() : null);
+        }
+    }
+
+    /**
+     * Checks whether this parsed list can still be used for the given item, that is none of its pages have been
+     * inscribed with anything else since.
+     */
+    private boolean isCurrentFor(Item item) {
+        if (item != priceListItem || unsaved)
+            return false;
+        Set<Item> pages = item.getItems();
+        if (pages.size() != inscriptionSnapshot.size())
+            return false;
+        for (Item page : pages) {
+            if (!inscriptionSnapshot.containsKey(page.getWurmId()))
+                return false;
+            InscriptionData inscription = page.getInscription();
+            if (!Objects.equals(inscriptionSnapshot.get(page.getWurmId()), inscription != null ? inscription.getInscription() : null))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Views are created as the entries are reached, so removing an entry while iterating skips the one after it.
+     */
     @NotNull
     public Iterator<Entry> iterator() {
-        return pricesOrder.iterator();
+        return new Iterator<Entry>() {
+            private int slot = 0;
+
+            @Override
+            public boolean hasNext() {
+                return slot < entries.size;
+            }
+
+            @Override
+            public Entry next() {
+                if (slot >= entries.size)
+                    throw new NoSuchElementException();
+                return new Entry(slot++);
+            }
+        };
     }
 
+    /**
+     * Removing entries shifts the ones after them, so work from the end of the array when removing any.
+     */
     public Entry[] asArray() {
-        return pricesOrder.toArray(new Entry[0]);
+        Entry[] array = new Entry[entries.size];
+        for (int i = 0; i < array.length; ++i)
+            array[i] = new Entry(i);
+        return array;
     }
 
-    public Stream<Entry> stream() { return prices.keySet().stream(); }
+    public Stream<Entry> stream() { return IntStream.range(0, entries.size).mapToObj(Entry::new); }
 
     public int size() {
-        return prices.size();
+        return entries.size;
+    }
+
+    /**
+     * @return A count that changes whenever an entry is added, removed or has its values changed.
+     */
+    public int getModificationCount() {
+        return modifications;
     }
 
+    /**
+     * Display items for trade windows.  These are kept and reused by later trades, and only replaced when the entry
+     * changes or the price list is reloaded.
+     */
     public Set<TempItem> getItems() {
         if (!createdItems) {
-            for (Entry item : prices.keySet()) {
+            for (int i = 0; i < entries.size; ++i) {
                 try {
-                    prices.put(item, createItem(item));
+                    entries.items[i] = createItem(new Entry(i));
                 } catch (IOException | NoSuchTemplateException e) {
                     logger.warning("Error when creating TempItem for trading.  Skipping entry.");
                     e.printStackTrace();
@@ -347,39 +758,124 @@ public class PriceList implements Iterable<PriceList.Entry> {
             createdItems = true;
         }
 
-        return new HashSet<>(prices.values());
+        Set<TempItem> items = new HashSet<>();
+        for (int i = 0; i < entries.size; ++i) {
+            if (entries.items[i] != null)
+                items.add(entries.items[i]);
+        }
+        return items;
+    }
+
+    private Map<Integer, Map<Byte, int[]>> getIndex() {
+        if (index == null) {
+            Map<Integer, Map<Byte, int[]>> newIndex = new HashMap<>();
+            for (int i = 0; i < entries.size; ++i) {
+                Map<Byte, int[]> materials = newIndex.computeIfAbsent(entries.templates[i], k -> new HashMap<>());
+                int[] byQL = materials.get(entries.materials[i]);
+                if (byQL == null) {
+                    byQL = new int[] { i };
+                } else {
+                    // Almost always only one or two entries, so insert in place.
+                    int at = byQL.length;
+                    while (at > 0 && entries.minQLs[byQL[at - 1]] < entries.minQLs[i])
+                        --at;
+                    int[] grown = new int[byQL.length + 1];
+                    System.arraycopy(byQL, 0, grown, 0, at);
+                    grown[at] = i;
+                    System.arraycopy(byQL, at, grown, at + 1, byQL.length - at);
+                    byQL = grown;
+                }
+                materials.put(entries.materials[i], byQL);
+            }
+            index = newIndex;
+        }
+        return index;
+    }
+
+    private int getHighestMatch(@Nullable int[] slots, float ql) {
+        if (slots != null) {
+            for (int slot : slots) {
+                if (ql >= entries.minQLs[slot])
+                    return slot;
+            }
+        }
+        return -1;
+    }
+
+    private int getSlot(Item item) {
+        Map<Byte, int[]> materials = getIndex().get(item.getTemplateId());
+        if (materials == null)
+            return -1;
+
+        float ql = item.getQualityLevel();
+        byte material = item.getMaterial();
+        int slot = getHighestMatch(materials.get(material), ql);
+        if (material != (byte)0) {
+            for (byte group = MaterialGroups.ALL_MEAT; MaterialGroups.isGroup(group); --group) {
+                if (MaterialGroups.contains(group, material)) {
+                    int inGroup = getHighestMatch(materials.get(group), ql);
+                    if (inGroup != -1 && (slot == -1 || entries.minQLs[inGroup] > entries.minQLs[slot]))
+                        slot = inGroup;
+                }
+            }
+            int any = getHighestMatch(materials.get((byte)0), ql);
+            if (any != -1 && (slot == -1 || entries.minQLs[any] > entries.minQLs[slot]))
+                slot = any;
+        }
+        return slot;
     }
 
-    private Optional<Entry> getEntry(Item item) {
-        return prices.keySet().stream()
-       .filter(priceItem -> item.getTemplateId() == priceItem.template && (priceItem.material == (byte)0 || item.getMaterial() == priceItem.material) && item.getQualityLevel() >= priceItem.minQL).max((o1, o2) -> Float.compare(o1.minQL, o2.minQL));
+    private int getListedSlot(int templateId, byte material, float minQL, int minimumPurchase) {
+        Map<Byte, int[]> materials = getIndex().get(templateId);
+        if (materials != null) {
+            int[] byQL = materials.get(material);
+            if (byQL != null) {
+                for (int slot : byQL) {
+                    if (Float.compare(entries.minQLs[slot], minQL) == 0 && entries.minimumPurchases[slot] == minimumPurchase)
+                        return slot;
+                }
+            }
+        }
+        return -1;
     }
 
     @Nullable
     public Entry getEntryFor(Item item) {
-        return getEntry(item).orElse(null);
+        int slot = getSlot(item);
+        return slot != -1 ? new Entry(slot) : null;
     }
 
     public int getPrice(Item item) {
-        return getEntry(item).map(priceItem -> priceItem.price).orElse(-1);
+        int slot = getSlot(item);
+        return slot != -1 ? new Entry(slot).getPrice(item.getQualityLevel()) : -1;
     }
 
     private TempItem createItem(Entry item) throws IOException, NoSuchTemplateException {
-        ItemTemplate template = ItemTemplateFactory.getInstance().getTemplate(item.template);
-        TempItem newItem = new TempItem(ItemFactory.generateName(template, item.material) + (item.material == (byte)0 ? ", any" : "") + (item.minimumPurchase != 1 ? " - minimum " + item.minimumPurchase : ""), template, item.minQL, "PriceList");
-        newItem.setMaterial(item.material);
-        newItem.setPrice(item.price);
+        ItemTemplate template = ItemTemplateFactory.getInstance().getTemplate(item.getTemplateId());
+        byte material = item.getMaterial();
+        int minimumPurchase = item.getMinimumPurchase();
+        String name;
+        if (MaterialGroups.isGroup(material)) {
+            name = ItemFactory.generateName(template, (byte)0) + ", " + MaterialGroups.getName(material);
+            material = (byte)0;
+        } else {
+            name = ItemFactory.generateName(template, material) + (material == (byte)0 ? ", any" : "");
+        }
+        TempItem newItem = new TempItem(name + (minimumPurchase != 1 ? " - minimum " + minimumPurchase : ""), template, item.getQualityLevel(), "PriceList");
+        newItem.setMaterial(material);
+        newItem.setPrice(item.getPrice());
         newItem.setOwnerId(priceListItem.getOwnerId());
         return newItem;
     }
 
     public void destroyItems() {
-        for (Map.Entry<Entry, TempItem> entry : prices.entrySet()) {
-            Item tempItem = entry.getValue();
+        for (int i = 0; i < entries.size; ++i) {
+            Item tempItem = entries.items[i];
             if (tempItem != null)
                 Items.destroyItem(tempItem.getWurmId());
-            prices.replace(entry.getKey(), null);
+            entries.items[i] = null;
         }
+        destroyDiscardedItems();
         createdItems = false;
     }
 
@@ -393,101 +889,126 @@ public class PriceList implements Iterable<PriceList.Entry> {
         return addItem(templateId, material, minQL, price, 1);
     }
     public Entry addItem(int templateId, byte material, float minQL, int price, int minimumPurchase) throws PriceListFullException, IOException, NoSuchTemplateException {
-        Entry item = new Entry(templateId, material, minQL, price, minimumPurchase);
-        if (prices.containsKey(item)) {
-            Entry alreadyListed = prices.keySet().stream().filter(entry -> entry.equals(item)).findAny().orElse(null);
-            if (alreadyListed != null) {
-                alreadyListed.price = price;
-                TempItem maybeItem = prices.get(alreadyListed);
-                if (maybeItem != null)
-                    maybeItem.setPrice(price);
-                return alreadyListed;
-            }
+        int listedSlot = getListedSlot(templateId, material, minQL, minimumPurchase);
+        if (listedSlot != -1) {
+            Entry alreadyListed = new Entry(listedSlot);
+            alreadyListed.updateItem(templateId, material, minQL, price, minimumPurchase);
+            return alreadyListed;
         }
 
-        // Plus one for newline.
-        int newLength = item.toString().length() + 1;
-        if (lastInscriptionLength + newLength > MAX_INSCRIPTION_LENGTH) {
-            if (pageCount < MAX_PAGES_IN_BOOK) {
-                pageCount += 1;
-                lastInscriptionLength = 0;
-            }
-            else {
-                throw new PriceListFullException("PriceList has too many items to inscribe.");
+        int newLength = CompactInscription.length(templateId, material, minQL, price, minimumPurchase, null);
+        int page = findPageWithSpace(newLength);
+        int slot = getInsertionSlot(page);
+        entries.insert(slot, templateId, material, minQL, price, minimumPurchase, page);
+        Entry item = new Entry(slot);
+        if (createdItems) {
+            try {
+                entries.items[slot] = createItem(item);
+            } catch (IOException | NoSuchTemplateException e) {
+                entries.remove(slot);
+                throw e;
             }
         }
-        lastInscriptionLength += newLength;
-        if (createdItems)
-            prices.put(item, createItem(item));
-        else
-            prices.put(item, null);
-        pricesOrder.add(item);
+        pageLengths[page] += newLength;
+        dirtyPages.set(page);
+        index = null;
+        ++modifications;
+        unsaved = true;
         return item;
     }
 
     public void removeItem(Entry item) {
-        if (prices.containsKey(item)) {
-            TempItem temp = prices.get(item);
+        // The given entry may be an equal copy, so find the listed one.
+        int slot = item.isListed() ? item.slot : getListedSlot(item.getTemplateId(), item.getMaterial(), item.getQualityLevel(), item.getMinimumPurchase());
+        if (slot != -1) {
+            TempItem temp = entries.items[slot];
             if (temp != null)
-                Items.destroyItem(temp.getWurmId());
-            lastInscriptionLength -= item.toString().length();
-            if (lastInscriptionLength < 0) {
-                lastInscriptionLength = 0;
-            }
-            prices.remove(item);
-            pricesOrder.remove(item);
+                discardItem(temp);
+            int page = entries.pages[slot];
+            pageLengths[page] -= getInscriptionLength(slot);
+            dirtyPages.set(page);
+            // The given entry keeps its values.
+            if (item.isListed())
+                item.detach();
+            entries.remove(slot);
+            index = null;
+            ++modifications;
+            unsaved = true;
         }
     }
 
     private void renamePage(Item page, int number) {
+        String description;
         if (priceListItem.getDescription().equals(BUY_LIST_DESCRIPTION))
-            page.setDescription(BUY_LIST_PAGE_PREFIX + number);
+            description = BUY_LIST_PAGE_PREFIX + number;
         else
-            page.setDescription(SELL_LIST_PAGE_PREFIX + number);
+            description = SELL_LIST_PAGE_PREFIX + number;
+        if (!description.equals(page.getDescription()))
+            page.setDescription(description);
     }
 
+    /**
+     * Writes any pages with changed entries.  Pages that were not changed are not inscribed again.
+     */
     public void savePriceList() throws PriceListFullException, PageNotAdded {
-        List<String> lines = new ArrayList<>();
-        StringBuilder sb = new StringBuilder();
-        for (Entry entry : pricesOrder) {
-            String str = entry.toString();
-            if (sb.length() + str.length() > MAX_INSCRIPTION_LENGTH) {
-                lines.add(sb.toString());
-                sb = new StringBuilder();
-            }
-            sb.append(str).append("\n");
-        }
-        lines.add(sb.toString());
-
-        int numberOfPages = lines.size();
-        if (numberOfPages > MAX_PAGES_IN_BOOK)
+        reclaimLastPages();
+        if (pageCount > MAX_PAGES_IN_BOOK)
             throw new PriceListFullException("PriceList data too long to inscribe.");
 
-        while(numberOfPages > priceListItem.getItems().size()) {
+        while (pageCount > pages.size()) {
             try {
-                addPageToPriceList(priceListItem);
+                pages.add(addPageToPriceList(priceListItem));
             } catch (NoSuchTemplateException | FailedException e) {
                 throw new PageNotAdded(priceListItem.getWurmId(), e);
             }
+            dirtyPages.set(pages.size() - 1);
         }
 
-        Iterator<Item> pages = priceListItem.getItems().iterator();
-        int number = 1;
-        for (String line : lines) {
-            Item page = pages.next();
-            renamePage(page, number);
-            page.setInscription(line, "");
+        StringBuilder[] inscriptions = new StringBuilder[pageCount];
+        for (int i = dirtyPages.nextSetBit(0); i >= 0 && i < pageCount; i = dirtyPages.nextSetBit(i + 1)) {
+            inscriptions[i] = new StringBuilder(MAX_INSCRIPTION_LENGTH);
+            CompactInscription.appendHeader(inscriptions[i]);
+        }
+        for (int i = 0; i < entries.size; ++i) {
+            StringBuilder sb = inscriptions[entries.pages[i]];
+            if (sb != null)
+                CompactInscription.append(sb, entries.templates[i], entries.materials[i], entries.minQLs[i], entries.prices[i], entries.minimumPurchases[i], entries.tiers[i]);
         }
 
-        List<Item> toRemove = new ArrayList<>();
-        pages.forEachRemaining(toRemove::add);
-        toRemove.forEach(item -> Items.destroyItem(item.getWurmId()));
-        lastInscriptionLength = lines.get(numberOfPages - 1).length();
-        pageCount = lines.size();
+        for (int i = 0; i < pageCount; ++i) {
+            Item page = pages.get(i);
+            renamePage(page, i + 1);
+            if (inscriptions[i] != null) {
+                String inscription = inscriptions[i].toString();
+                InscriptionData current = page.getInscription();
+                if (current == null || !inscription.equals(current.getInscription()))
+                    page.setInscription(inscription, "");
+            }
+        }
+
+        while (pages.size() > pageCount)
+            Items.destroyItem(pages.remove(pages.size() - 1).getWurmId());
+
+        dirtyPages.clear();
+        unsaved = false;
+        takeInscriptionSnapshot();
+        cache(priceListItem, this);
     }
 
     public void sortAndSave() throws PriceListFullException, PageNotAdded {
-        pricesOrder.sort(Entry::compareTo);
+        // Look up every name once before sorting, rather than during comparisons.
+        Entry[] sorted = asArray();
+        for (Entry entry : sorted)
+            entry.getName();
+        Arrays.sort(sorted);
+        int[] order = new int[sorted.length];
+        for (int i = 0; i < sorted.length; ++i)
+            order[i] = sorted[i].slot;
+        entries.reorder(order);
+        // Rows have moved, so the index and anything priced from it are out of date.
+        index = null;
+        ++modifications;
+        layoutPages();
         savePriceList();
     }
 
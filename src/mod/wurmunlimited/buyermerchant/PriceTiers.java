@@ -0,0 +1,137 @@
+package mod.wurmunlimited.buyermerchant;
+
+import java.util.Arrays;
+
+/**
+ * Step price curve for a single price list entry, so one entry can pay more for higher quality items instead of
+ * needing an entry for each minQL.  Each tier is the price for items of at least that QL, items below the first tier
+ * use the entry's own price.
+ *
+ * Written as "ql:price" pairs separated by commas, e.g. "50:150,70:200".
+ */
+public class PriceTiers {
+    public static final int MAX_TIERS = 16;
+    // Longest text for MAX_TIERS tiers, for sizing input fields.
+    public static final int MAX_TEXT_LENGTH = MAX_TIERS * "100.00:2147483647,".length() - 1;
+    private final float[] qls;
+    private final int[] prices;
+
+    /**
+     * @param qls Tier QLs in ascending order, rounded to hundredths when stored.
+     * @param prices Price in irons for each tier, -1 for unauthorised.
+     * @throws NumberFormatException if the tiers are empty, out of order, or have an invalid QL or price.
+     */
+    public PriceTiers(float[] qls, int[] prices) throws NumberFormatException {
+        if (qls.length == 0 || qls.length > MAX_TIERS || qls.length != prices.length)
+            throw new NumberFormatException("Between 1 and " + MAX_TIERS + " tiers are required, was " + qls.length);
+        this.qls = new float[qls.length];
+        this.prices = Arrays.copyOf(prices, prices.length);
+        for (int i = 0; i < qls.length; ++i) {
+            if (!(qls[i] >= 0 && qls[i] <= 100))
+                throw new NumberFormatException("Tier QL was " + qls[i]);
+            this.qls[i] = Math.round(qls[i] * 100) / 100f;
+            if (i > 0 && this.qls[i] <= this.qls[i - 1])
+                throw new NumberFormatException("Tier QLs must be in ascending order, " + this.qls[i] + " after " + this.qls[i - 1]);
+            if (prices[i] < PriceList.unauthorised)
+                throw new NumberFormatException("Tier price was " + prices[i]);
+        }
+    }
+
+    /**
+     * @throws NumberFormatException if the text is not "ql:price" pairs, or the tiers are not valid.
+     */
+    public static PriceTiers parse(String tiers) throws NumberFormatException {
+        String[] pairs = tiers.split(",");
+        float[] qls = new float[pairs.length];
+        int[] prices = new int[pairs.length];
+        for (int i = 0; i < pairs.length; ++i) {
+            String[] pair = pairs[i].split(":");
+            if (pair.length != 2)
+                throw new NumberFormatException("Tier should be ql:price, was " + pairs[i].trim());
+            qls[i] = Float.parseFloat(pair[0].trim());
+            prices[i] = Integer.parseInt(pair[1].trim());
+        }
+        return new PriceTiers(qls, prices);
+    }
+
+    /**
+     * @param minQL The entry's minQL, which no tier may be below.
+     * @throws NumberFormatException if the text is not "ql:price" pairs, the tiers are not valid, or any tier is below
+     * minQL.
+     */
+    public static PriceTiers parse(String tiers, float minQL) throws NumberFormatException {
+        PriceTiers parsed = parse(tiers);
+        if (!parsed.isAtOrAbove(minQL))
+            throw new NumberFormatException("Tier QL " + parsed.qls[0] + " is below the minimum QL " + minQL);
+        return parsed;
+    }
+
+    /**
+     * @return Whether every tier is at or above the given QL.
+     */
+    public boolean isAtOrAbove(float minQL) {
+        return qls[0] >= minQL;
+    }
+
+    public int size() {
+        return qls.length;
+    }
+
+    public float getQualityLevel(int tier) {
+        return qls[tier];
+    }
+
+    public int getPrice(int tier) {
+        return prices[tier];
+    }
+
+    /**
+     * @return The price of the highest tier at or below ql, or basePrice if ql is below every tier.
+     */
+    public int getPrice(float ql, int basePrice) {
+        int low = 0;
+        int high = qls.length - 1;
+        int match = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (qls[middle] <= ql) {
+                match = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return match == -1 ? basePrice : prices[match];
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (o == null || getClass() != o.getClass())
+            return false;
+        PriceTiers other = (PriceTiers)o;
+        return Arrays.equals(qls, other.qls) && Arrays.equals(prices, other.prices);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(qls) + Arrays.hashCode(prices);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < qls.length; ++i) {
+            if (i > 0)
+                sb.append(',');
+            float ql = qls[i];
+            if (ql == (int)ql)
+                sb.append((int)ql);
+            else
+                sb.append(ql);
+            sb.append(':').append(prices[i]);
+        }
+        return sb.toString();
+    }
+}
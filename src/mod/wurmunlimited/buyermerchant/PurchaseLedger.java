@@ -0,0 +1,180 @@
+package mod.wurmunlimited.buyermerchant;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Every item bought by a buyer, as fixed size binary records in one file per day (UTC), purchases-yyyy-mm-dd.bin.
+ * Files are memory mapped, so recording a purchase is a few writes to memory, and can be read with
+ * PurchaseLedgerReader without going through the trade logs.
+ *
+ * Each file starts with a header of MAGIC, VERSION and the number of records written, which is only increased once
+ * the record is complete.  The file is grown in small steps, so anything past the record count is unused.
+ *
+ * Nothing is forced out to disk while recording, the operating system writes the mapped pages back on its own.  A
+ * day's file is only forced once the next day's is opened, on a background thread, or when the ledger is closed.
+ */
+public class PurchaseLedger {
+    private static final Logger logger = Logger.getLogger(PurchaseLedger.class.getName());
+    static final int MAGIC = 0x424D504C;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int COUNT_OFFSET = 8;
+    // timestamp, shop, owner, seller, price, template, QL, weight and material, padded to a multiple of 8.
+    static final int RECORD_SIZE = 56;
+    static final int TIMESTAMP = 0;
+    static final int SHOP = 8;
+    static final int OWNER = 16;
+    static final int SELLER = 24;
+    static final int PRICE = 32;
+    static final int TEMPLATE = 40;
+    static final int QL = 44;
+    static final int WEIGHT = 48;
+    static final int MATERIAL = 52;
+    // About 14KB, so a quiet server's daily files stay small.
+    static final int RECORDS_PER_STEP = 256;
+    private static final long FLUSH_TIMEOUT_SECONDS = 10;
+    public static Path directory = Paths.get("buyer_ledger");
+    private static FileChannel channel;
+    private static MappedByteBuffer buffer;
+    private static LocalDate day;
+    private static long count;
+    static final ExecutorService flusher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "BuyerPurchaseLedgerFlusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static Path getSegment(Path directory, LocalDate day) {
+        return directory.resolve("purchases-" + day + ".bin");
+    }
+
+    public static void record(long shopId, long ownerId, long sellerId, int templateId, byte material, float ql, int weight, long price) {
+        record(System.currentTimeMillis(), shopId, ownerId, sellerId, templateId, material, ql, weight, price);
+    }
+
+    static synchronized void record(long timestamp, long shopId, long ownerId, long sellerId, int templateId, byte material, float ql, int weight, long price) {
+        try {
+            LocalDate recordDay = Instant.ofEpochMilli(timestamp).atZone(ZoneOffset.UTC).toLocalDate();
+            if (!recordDay.equals(day)) {
+                retire();
+                open(recordDay);
+            }
+            int position = HEADER_SIZE + (int)count * RECORD_SIZE;
+            if (position + RECORD_SIZE > buffer.capacity()) {
+                map(buffer.capacity() + RECORDS_PER_STEP * RECORD_SIZE);
+            }
+
+            buffer.putLong(position + TIMESTAMP, timestamp);
+            buffer.putLong(position + SHOP, shopId);
+            buffer.putLong(position + OWNER, ownerId);
+            buffer.putLong(position + SELLER, sellerId);
+            buffer.putLong(position + PRICE, price);
+            buffer.putInt(position + TEMPLATE, templateId);
+            buffer.putFloat(position + QL, ql);
+            buffer.putInt(position + WEIGHT, weight);
+            buffer.put(position + MATERIAL, material);
+            ++count;
+            buffer.putLong(COUNT_OFFSET, count);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not record purchase in ledger.", e);
+            close();
+        }
+    }
+
+    private static void open(LocalDate newDay) throws IOException {
+        Files.createDirectories(directory);
+        channel = FileChannel.open(getSegment(directory, newDay), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = channel.size();
+        map(Math.max(size, HEADER_SIZE + RECORDS_PER_STEP * RECORD_SIZE));
+        if (size == 0) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putLong(COUNT_OFFSET, 0);
+        } else if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            channel.close();
+            channel = null;
+            buffer = null;
+            throw new IOException(getSegment(directory, newDay) + " is not a version " + VERSION + " purchase ledger.");
+        }
+        count = buffer.getLong(COUNT_OFFSET);
+        day = newDay;
+    }
+
+    // The previous mapping is of the same file, so its unwritten pages are not lost by dropping it.
+    private static void map(long size) throws IOException {
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    /**
+     * Hands the current file to the flusher thread to be written out and closed, so the purchase that starts a new
+     * day does not wait on the disk.
+     */
+    private static void retire() {
+        MappedByteBuffer oldBuffer = buffer;
+        FileChannel oldChannel = channel;
+        buffer = null;
+        channel = null;
+        day = null;
+        count = 0;
+        if (oldChannel == null)
+            return;
+
+        flusher.execute(() -> {
+            if (oldBuffer != null) {
+                oldBuffer.force();
+            }
+            try {
+                oldChannel.close();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * Writes the current file out to disk and closes it, and waits for any previous days' files the flusher thread has
+     * not finished with, as it will not outlive the server.  The next purchase opens the current file again.
+     */
+    public static synchronized void close() {
+        if (buffer != null) {
+            buffer.force();
+            buffer = null;
+        }
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, e.getMessage(), e);
+            }
+            channel = null;
+        }
+        day = null;
+        count = 0;
+
+        // The flusher runs tasks in order, so once this one has run every retired file has been closed.
+        try {
+            flusher.submit(() -> {}).get(FLUSH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warning("Interrupted while waiting for previous ledger files to be written out.");
+        } catch (ExecutionException | TimeoutException e) {
+            logger.log(Level.WARNING, "Previous ledger files may not have been written out.", e);
+        }
+    }
+}
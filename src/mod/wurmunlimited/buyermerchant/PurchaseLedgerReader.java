@@ -0,0 +1,127 @@
+package mod.wurmunlimited.buyermerchant;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Reads the PurchaseLedger's files, optionally only those for a range of days, and totals them by buyer or by item
+ * template.
+ *
+ * Can also be run on its own, printing the totals as comma separated values:
+ *   java -cp buyermerchant.jar mod.wurmunlimited.buyermerchant.PurchaseLedgerReader buyer_ledger buyer|template [from] [to]
+ * where from and to are dates such as 2020-01-31.
+ */
+public class PurchaseLedgerReader {
+    private final Path directory;
+    private final LocalDate from;
+    private final LocalDate to;
+
+    /**
+     * @param from First day to read, or null for no limit.
+     * @param to Last day to read, or null for no limit.
+     */
+    public PurchaseLedgerReader(Path directory, LocalDate from, LocalDate to) {
+        this.directory = directory;
+        this.from = from;
+        this.to = to;
+    }
+
+    List<Path> getSegments() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        if (!Files.isDirectory(directory))
+            return segments;
+        LocalDate first = from != null ? from : LocalDate.MIN;
+        LocalDate last = to != null ? to : LocalDate.MAX;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "purchases-*.bin")) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                LocalDate day;
+                try {
+                    day = LocalDate.parse(name.substring("purchases-".length(), name.length() - ".bin".length()));
+                } catch (DateTimeParseException e) {
+                    continue;
+                }
+                if (!day.isBefore(first) && !day.isAfter(last))
+                    segments.add(path);
+            }
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    public void forEach(Consumer<PurchaseRecord> consumer) throws IOException {
+        for (Path segment : getSegments()) {
+            try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+                if (channel.size() < PurchaseLedger.HEADER_SIZE)
+                    continue;
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (buffer.getInt(0) != PurchaseLedger.MAGIC || buffer.getInt(4) != PurchaseLedger.VERSION)
+                    throw new IOException(segment + " is not a version " + PurchaseLedger.VERSION + " purchase ledger.");
+
+                long count = Math.min(buffer.getLong(PurchaseLedger.COUNT_OFFSET),
+                        (channel.size() - PurchaseLedger.HEADER_SIZE) / PurchaseLedger.RECORD_SIZE);
+                for (int i = 0; i < count; ++i) {
+                    int position = PurchaseLedger.HEADER_SIZE + i * PurchaseLedger.RECORD_SIZE;
+                    consumer.accept(new PurchaseRecord(
+                            buffer.getLong(position + PurchaseLedger.TIMESTAMP),
+                            buffer.getLong(position + PurchaseLedger.SHOP),
+                            buffer.getLong(position + PurchaseLedger.OWNER),
+                            buffer.getLong(position + PurchaseLedger.SELLER),
+                            buffer.getInt(position + PurchaseLedger.TEMPLATE),
+                            buffer.get(position + PurchaseLedger.MATERIAL),
+                            buffer.getFloat(position + PurchaseLedger.QL),
+                            buffer.getInt(position + PurchaseLedger.WEIGHT),
+                            buffer.getLong(position + PurchaseLedger.PRICE)));
+                }
+            }
+        }
+    }
+
+    private <K> Map<K, PurchaseTotals> totalsBy(Function<PurchaseRecord, K> key) throws IOException {
+        Map<K, PurchaseTotals> totals = new TreeMap<>();
+        forEach(record -> totals.computeIfAbsent(key.apply(record), k -> new PurchaseTotals()).add(record));
+        return totals;
+    }
+
+    /**
+     * @return Buyer (shop) WurmId -> totals.
+     */
+    public Map<Long, PurchaseTotals> totalsByBuyer() throws IOException {
+        return totalsBy(record -> record.shopId);
+    }
+
+    /**
+     * @return Item template id -> totals.
+     */
+    public Map<Integer, PurchaseTotals> totalsByTemplate() throws IOException {
+        return totalsBy(record -> record.templateId);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || !(args[1].equals("buyer") || args[1].equals("template"))) {
+            System.err.println("Usage: PurchaseLedgerReader <directory> buyer|template [from] [to]");
+            System.exit(1);
+        }
+        PurchaseLedgerReader reader = new PurchaseLedgerReader(Paths.get(args[0]),
+                args.length > 2 ? LocalDate.parse(args[2]) : null,
+                args.length > 3 ? LocalDate.parse(args[3]) : null);
+
+        Map<?, PurchaseTotals> totals = args[1].equals("buyer") ? reader.totalsByBuyer() : reader.totalsByTemplate();
+        System.out.println(args[1] + ",count,weight,price");
+        for (Map.Entry<?, PurchaseTotals> entry : totals.entrySet()) {
+            PurchaseTotals total = entry.getValue();
+            System.out.println(entry.getKey() + "," + total.getCount() + "," + total.getWeight() + "," + total.getPrice());
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package mod.wurmunlimited.buyermerchant;
+
+/**
+ * A purchase read back from the PurchaseLedger.
+ */
+public class PurchaseRecord {
+    public final long timestamp;
+    public final long shopId;
+    public final long ownerId;
+    public final long sellerId;
+    public final int templateId;
+    public final byte material;
+    public final float ql;
+    public final int weight;
+    public final long price;
+
+    PurchaseRecord(long timestamp, long shopId, long ownerId, long sellerId, int templateId, byte material, float ql, int weight, long price) {
+        this.timestamp = timestamp;
+        this.shopId = shopId;
+        this.ownerId = ownerId;
+        this.sellerId = sellerId;
+        this.templateId = templateId;
+        this.material = material;
+        this.ql = ql;
+        this.weight = weight;
+        this.price = price;
+    }
+}
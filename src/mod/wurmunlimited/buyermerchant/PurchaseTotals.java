@@ -0,0 +1,28 @@
+package mod.wurmunlimited.buyermerchant;
+
+/**
+ * The number of items, total weight and total price of a group of purchases.
+ */
+public class PurchaseTotals {
+    private long count = 0;
+    private long weight = 0;
+    private long price = 0;
+
+    void add(PurchaseRecord record) {
+        ++count;
+        weight += record.weight;
+        price += record.price;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getWeight() {
+        return weight;
+    }
+
+    public long getPrice() {
+        return price;
+    }
+}
@@ -6,6 +6,7 @@ import com.wurmonline.server.items.Item;
 import com.wurmonline.server.items.ItemsPackageFactory;
 import com.wurmonline.server.items.NoSuchTemplateException;
 import mod.wurmunlimited.WurmTradingTest;
+import mod.wurmunlimited.buyermerchant.BuyerRegistry;
 import mod.wurmunlimited.buyermerchant.PriceList;
 import org.gotti.wurmunlimited.modsupport.actions.ActionEntryBuilder;
 import org.junit.jupiter.api.BeforeEach;
@@ -101,6 +102,7 @@ class CopyPriceListActionTest extends WurmTradingTest {
     void testActionBuyerHasNoShop() {
         Creature newBuyer = factory.createNewCreature(CreatureTemplate.SALESMAN_CID);
         newBuyer.setName("Buyer_Fred");
+        BuyerRegistry.add(newBuyer.getWurmId());
         newBuyer.getInventory().insertItem(factory.createPriceList());
         assert newBuyer.getShop() == null;
 
@@ -6,8 +6,10 @@ import com.wurmonline.server.economy.Economy;
 import com.wurmonline.server.economy.MonetaryConstants;
 import com.wurmonline.server.economy.Shop;
 import com.wurmonline.server.items.*;
+import com.wurmonline.shared.constants.ItemMaterials;
 import mod.wurmunlimited.WurmTradingTest;
 import mod.wurmunlimited.buyermerchant.PriceList;
+import mod.wurmunlimited.buyermerchant.PriceTiers;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
@@ -83,7 +85,7 @@ class BuyerHandler_NotOwnerTest extends WurmTradingTest {
 
     @SuppressWarnings("DuplicateExpressions")
     @Test
-    void testPriceListItemsDestroyedOnEnd() throws NoSuchFieldException, IllegalAccessException {
+    void testPriceListItemsKeptForNextTrade() throws NoSuchFieldException, IllegalAccessException, PriceList.NoPriceListOnBuyer {
         Item item1 = factory.createNewItem();
         Item item2 = factory.createNewItem(factory.getIsHollowId());
         Item item3 = factory.createBuyerContract();
@@ -109,6 +111,15 @@ class BuyerHandler_NotOwnerTest extends WurmTradingTest {
 
         handler.end();
 
+        assertDoesNotThrow(() -> Items.getItem(temp1.getWurmId()));
+        assertDoesNotThrow(() -> Items.getItem(temp2.getWurmId()));
+        assertDoesNotThrow(() -> Items.getItem(temp3.getWurmId()));
+        Set<TempItem> nextTrade = PriceList.getPriceListFromBuyer(buyer).getItems();
+        assertEquals(3, nextTrade.size());
+        assertTrue(nextTrade.containsAll(Arrays.asList(temp1, temp2, temp3)));
+
+        PriceList.invalidate(buyer.getInventory().getItems().stream().filter(PriceList::isPriceList).findAny().orElseThrow(RuntimeException::new));
+
         assertThrows(NoSuchItemException.class, () -> Items.getItem(temp1.getWurmId()));
         assertThrows(NoSuchItemException.class, () -> Items.getItem(temp2.getWurmId()));
         assertThrows(NoSuchItemException.class, () -> Items.getItem(temp3.getWurmId()));
@@ -293,6 +304,33 @@ class BuyerHandler_NotOwnerTest extends WurmTradingTest {
         assertEquals(player.getInventory().getItems().iterator().next(), playerToTrade.getItems()[0]);
     }
 
+    @Test
+    void testBalanceDelayedUntilChangesStop() {
+        Item item = factory.createNewItem();
+        player.getInventory().insertItem(item);
+        addOneCopperItemToPriceList(item);
+
+        createHandler();
+        handler.addItemsToTrade();
+        player.getInventory().getItems().forEach(playerOffer::addItem);
+        try {
+            BuyerHandler.balanceDelay = Long.MAX_VALUE;
+            handler.tradeChanged();
+            handler.balance();
+
+            assertFalse(buyerIsSatisfied());
+            assertEquals(1, playerOffer.getItems().length);
+            assertEquals(0, buyerToTrade.getItems().length);
+        } finally {
+            BuyerHandler.balanceDelay = 0;
+        }
+
+        handler.balance();
+
+        assertTrue(buyerIsSatisfied());
+        assertEquals(1, playerToTrade.getItems().length);
+    }
+
     @Test
     void testStillBalancedAfterChange() throws IOException, PriceList.PriceListFullException, PriceList.PageNotAdded, NoSuchTemplateException {
         Item item = factory.createNewItem();
@@ -314,6 +352,48 @@ class BuyerHandler_NotOwnerTest extends WurmTradingTest {
         assertTrue(buyerIsSatisfied());
     }
 
+    @Test
+    void testAcceptedTotalUpdatedWhenItemRemoved() {
+        Item item1 = factory.createNewItem();
+        Item item2 = factory.createNewItem();
+        player.getInventory().insertItem(item1);
+        player.getInventory().insertItem(item2);
+        addOneCopperItemToPriceList(item1);
+        factory.getShop(buyer).setMoney(MonetaryConstants.COIN_SILVER);
+
+        createHandler();
+        playerOffer.addItem(item1);
+        playerOffer.addItem(item2);
+        handler.balance();
+        assertThat(Arrays.asList(trade.getCreatureOneRequestWindow().getItems()), containsCoinsOfValue((long)MonetaryConstants.COIN_COPPER * 2));
+
+        playerToTrade.removeItem(item2);
+        handler.tradeChanged();
+        handler.balance();
+        assertThat(Arrays.asList(trade.getCreatureOneRequestWindow().getItems()), containsCoinsOfValue((long)MonetaryConstants.COIN_COPPER));
+    }
+
+    @Test
+    void testAcceptedItemsRepricedWhenPriceListChanges() throws PriceList.PriceListFullException, PriceList.NoPriceListOnBuyer {
+        Item item1 = factory.createNewItem();
+        Item item2 = factory.createNewItem();
+        player.getInventory().insertItem(item1);
+        player.getInventory().insertItem(item2);
+        addOneCopperItemToPriceList(item1);
+        factory.getShop(buyer).setMoney(MonetaryConstants.COIN_SILVER);
+
+        createHandler();
+        playerOffer.addItem(item1);
+        playerOffer.addItem(item2);
+        handler.balance();
+        assertThat(Arrays.asList(trade.getCreatureOneRequestWindow().getItems()), containsCoinsOfValue((long)MonetaryConstants.COIN_COPPER * 2));
+
+        PriceList.getPriceListFromBuyer(buyer).iterator().next().updateItemDetails(1.0f, MonetaryConstants.COIN_COPPER * 2, 1);
+        handler.tradeChanged();
+        handler.balance();
+        assertThat(Arrays.asList(trade.getCreatureOneRequestWindow().getItems()), containsCoinsOfValue((long)MonetaryConstants.COIN_COPPER * 4));
+    }
+
     @Test
     void testPriceOnLowWeightItems() {
         Item fullWeight = factory.createNewItem();
@@ -335,6 +415,62 @@ class BuyerHandler_NotOwnerTest extends WurmTradingTest {
         );
     }
 
+    @Test
+    void testPriceWorkedOutAgainWhenItemChanges() {
+        Item item = factory.createNewItem();
+        addOneCopperItemToPriceList(item);
+
+        createHandler();
+        assert handler.getTraderBuyPriceForItem(item) == MonetaryConstants.COIN_COPPER;
+
+        item.setWeight(item.getTemplate().getWeightGrams() / 2, false);
+        assertEquals(MonetaryConstants.COIN_COPPER / 2, handler.getTraderBuyPriceForItem(item));
+
+        item.setWeight(item.getTemplate().getWeightGrams(), false);
+        item.setDamage(10);
+        assertEquals(0, handler.getTraderBuyPriceForItem(item));
+
+        item.setDamage(0);
+        assertEquals(MonetaryConstants.COIN_COPPER, handler.getTraderBuyPriceForItem(item));
+    }
+
+    @Test
+    void testEntryWorkedOutAgainWhenMaterialChanges() throws PriceList.PriceListFullException, PriceList.PageNotAdded, NoSuchTemplateException, IOException {
+        Item item = factory.createNewItem();
+        item.setMaterial(ItemMaterials.MATERIAL_IRON);
+        PriceList priceList = PriceList.getPriceListFromBuyer(buyer);
+        priceList.addItem(item.getTemplateId(), ItemMaterials.MATERIAL_IRON, 1.0f, 10);
+        priceList.addItem(item.getTemplateId(), ItemMaterials.MATERIAL_TIN, 1.0f, 20);
+        priceList.savePriceList();
+
+        createHandler();
+        assert handler.getTraderBuyPriceForItem(item) == 10;
+
+        item.setMaterial(ItemMaterials.MATERIAL_TIN);
+        assertEquals(20, handler.getTraderBuyPriceForItem(item));
+    }
+
+    @Test
+    void testPriceFromQualityTiers() throws PriceList.PriceListFullException, PriceList.PageNotAdded, IOException, NoSuchTemplateException {
+        PriceList priceList = PriceList.getPriceListFromBuyer(buyer);
+        Item low = factory.createNewItem(factory.getIsWoodId());
+        low.setQualityLevel(20);
+        Item mid = factory.createNewItem(factory.getIsWoodId());
+        mid.setQualityLevel(60);
+        Item high = factory.createNewItem(factory.getIsWoodId());
+        high.setQualityLevel(90);
+        PriceList.Entry entry = priceList.addItem(low.getTemplateId(), low.getMaterial(), 1.0f, 10);
+        entry.updateItemDetails(1.0f, 10, 1, PriceTiers.parse("50:20,80:40"));
+        priceList.savePriceList();
+
+        createHandler();
+        assertAll(
+                () -> assertEquals(10, handler.getTraderBuyPriceForItem(low)),
+                () -> assertEquals(20, handler.getTraderBuyPriceForItem(mid)),
+                () -> assertEquals(40, handler.getTraderBuyPriceForItem(high))
+        );
+    }
+
     @Test
     void testNegativePriceAlwaysReturns0() throws PriceList.PriceListFullException, PriceList.PageNotAdded, IOException, NoSuchTemplateException {
         PriceList priceList = PriceList.getPriceListFromBuyer(buyer);
@@ -422,6 +558,58 @@ class BuyerHandler_NotOwnerTest extends WurmTradingTest {
         assertEquals(0, playerToTrade.getItems().length);
     }
 
+    @Test
+    void testPleaseEmptyMessagesGrouped() {
+        Item reedPen = factory.createNewItem(ItemTemplateFactory.getInstance().getTemplate("reed pen").getTemplateId());
+        factory.fillItemWith(reedPen, 753);
+        addOneCopperItemToPriceList(reedPen);
+        Item container = factory.createNewItem(factory.getIsHollowId());
+        container.insertItem(factory.createNewItem(), true);
+        addOneCopperItemToPriceList(container);
+
+        createHandler();
+        playerOffer.addItem(reedPen);
+        playerOffer.addItem(container);
+        handler.balance();
+
+        String[] messages = Arrays.stream(factory.getCommunicator(player).getMessages()).filter(m -> m.contains("Please empty")).toArray(String[]::new);
+        assertEquals(1, messages.length);
+        assertTrue(messages[0].contains(reedPen.getName()));
+        assertTrue(messages[0].contains(container.getName()));
+    }
+
+    @Test
+    void testSameMessagesNotSentAgainOnNextBalance() {
+        Item reedPen = factory.createNewItem(ItemTemplateFactory.getInstance().getTemplate("reed pen").getTemplateId());
+        factory.fillItemWith(reedPen, 753);
+        addOneCopperItemToPriceList(reedPen);
+
+        createHandler();
+        playerOffer.addItem(reedPen);
+        handler.balance();
+        handler.tradeChanged();
+        handler.balance();
+
+        assertEquals(1, Arrays.stream(factory.getCommunicator(player).getMessages()).filter(m -> m.contains("Please empty")).count());
+    }
+
+    @Test
+    void testSameMessagesSentAgainWhenOfferChanged() {
+        Item reedPen = factory.createNewItem(ItemTemplateFactory.getInstance().getTemplate("reed pen").getTemplateId());
+        factory.fillItemWith(reedPen, 753);
+        addOneCopperItemToPriceList(reedPen);
+
+        createHandler();
+        playerOffer.addItem(reedPen);
+        handler.balance();
+        playerOffer.removeItem(reedPen);
+        playerOffer.addItem(reedPen);
+        handler.tradeChanged();
+        handler.balance();
+
+        assertEquals(2, Arrays.stream(factory.getCommunicator(player).getMessages()).filter(m -> m.contains("Please empty")).count());
+    }
+
     @Test
     void testMinimumPurchaseItemsAreLabelledSo() throws PriceList.PriceListFullException, PriceList.PageNotAdded, IOException, NoSuchTemplateException {
         PriceList priceList = PriceList.getPriceListFromBuyer(buyer);
@@ -533,6 +721,61 @@ class BuyerHandler_NotOwnerTest extends WurmTradingTest {
         assertEquals(numberOfItems - BuyerHandler.maxPersonalItems + 1, player.getInventory().getNumItemsNotCoins());
     }
 
+    @Test
+    void testMostValuableMinimumPurchaseChosenWhenBothDoNotFit() throws PriceList.PriceListFullException, PriceList.PageNotAdded, NoSuchTemplateException, IOException {
+        int minimumPurchase = 10;
+        BuyerHandler.maxPersonalItems = 16;
+        PriceList priceList = PriceList.getPriceListFromBuyer(buyer);
+        priceList.addItem(factory.getIsWoodId(), (byte)0, 1.0f, 10, minimumPurchase);
+        priceList.addItem(factory.getIsMetalId(), (byte)0, 1.0f, 100, minimumPurchase);
+        priceList.savePriceList();
+
+        createHandler();
+        factory.getShop(buyer).setMoney(100000);
+        List<Item> wood = new ArrayList<>();
+        factory.createManyItems(factory.getIsWoodId(), 10).iterator().forEachRemaining(wood::add);
+        List<Item> metal = new ArrayList<>();
+        factory.createManyItems(factory.getIsMetalId(), 15).iterator().forEachRemaining(metal::add);
+        wood.forEach(player.getInventory()::insertItem);
+        metal.forEach(player.getInventory()::insertItem);
+        wood.forEach(playerOffer::addItem);
+        metal.forEach(playerOffer::addItem);
+        handler.balance();
+
+        assertEquals(15, playerToTrade.getItems().length);
+        assertTrue(Arrays.asList(playerToTrade.getItems()).containsAll(metal));
+        assertEquals(10, playerOffer.getItems().length);
+        assertThat(player, receivedMessageContaining("cannot add more items"));
+    }
+
+    @Test
+    void testMinimumPurchaseFallsBackToGreedyWhenOverBudget() throws PriceList.PriceListFullException, PriceList.PageNotAdded, NoSuchTemplateException, IOException {
+        int minimumPurchase = 20;
+        int numberOfItems = minimumPurchase * 2;
+        BuyerHandler.maxPersonalItems = (int)(minimumPurchase * 1.5f);
+        PriceList priceList = PriceList.getPriceListFromBuyer(buyer);
+        priceList.addItem(factory.getIsWoodId(), (byte)0, 1.0f, 10, minimumPurchase);
+        priceList.savePriceList();
+
+        createHandler();
+        factory.getShop(buyer).setMoney((long)(10 * numberOfItems * 1.1f));
+        List<Item> items = new ArrayList<>();
+        factory.createManyItems(factory.getIsWoodId(), numberOfItems).iterator().forEachRemaining(items::add);
+        items.forEach(player.getInventory()::insertItem);
+        items.forEach(playerOffer::addItem);
+        long budget = MinimumSolver.budget;
+        try {
+            MinimumSolver.budget = -1;
+            handler.balance();
+        } finally {
+            MinimumSolver.budget = budget;
+        }
+
+        assertEquals(BuyerHandler.maxPersonalItems - 1, playerToTrade.getItems().length);
+        assertEquals(numberOfItems - BuyerHandler.maxPersonalItems + 1, playerOffer.getItems().length);
+        assertThat(player, receivedMessageContaining("to accept all of the " + ItemTemplateFactory.getInstance().getTemplate(factory.getIsWoodId()).getPlural()));
+    }
+
     @Test
     void testOverMaximumAddedSeparately() throws PriceList.PriceListFullException, PriceList.PageNotAdded, NoSuchTemplateException, IOException {
         int minimumPurchase = 20;
@@ -568,6 +811,35 @@ class BuyerHandler_NotOwnerTest extends WurmTradingTest {
         assertThat(player, hasCoinsOfValue((long)(10 * numberOfItems)));
     }
 
+    @Test
+    void testAcceptedMinimumPurchaseItemsNotMovedWhenMoreAdded() throws PriceList.PriceListFullException, PriceList.PageNotAdded, NoSuchTemplateException, IOException {
+        int minimumPurchase = 20;
+        PriceList priceList = PriceList.getPriceListFromBuyer(buyer);
+        priceList.addItem(factory.getIsWoodId(), (byte)0, 1.0f, 10, minimumPurchase);
+        priceList.savePriceList();
+
+        createHandler();
+        factory.getShop(buyer).setMoney(100000);
+        List<Item> items = new ArrayList<>();
+        factory.createManyItems(factory.getIsWoodId(), minimumPurchase + 1).iterator().forEachRemaining(items::add);
+        items.forEach(player.getInventory()::insertItem);
+        items.subList(0, minimumPurchase).forEach(playerOffer::addItem);
+        handler.balance();
+        assert playerToTrade.getItems().length == minimumPurchase;
+
+        FakeCommunicator communicator = (FakeCommunicator)player.getCommunicator();
+        communicator.removedFromInventory.clear();
+        playerOffer.addItem(items.get(minimumPurchase));
+        handler.addToInventory(items.get(minimumPurchase), playerOffer.getWurmId());
+        handler.balance();
+
+        assertEquals(minimumPurchase + 1, playerToTrade.getItems().length);
+        assertEquals(0, playerOffer.getItems().length);
+        assertTrue(communicator.removedFromInventory.contains(items.get(minimumPurchase)));
+        assertTrue(communicator.removedFromInventory.stream().noneMatch(items.subList(0, minimumPurchase)::contains));
+        assertEquals(10 * (minimumPurchase + 1), Stream.of(buyerToTrade.getItems()).mapToInt(i -> Economy.getValueFor(i.getTemplateId())).sum());
+    }
+
     @Test
     void testSomeMinimumPurchaseItemsRemovedFromTrade() throws PriceList.PriceListFullException, PriceList.PageNotAdded, NoSuchTemplateException, IOException, IllegalAccessException, NoSuchFieldException {
         int minimumPurchase = 20;
@@ -5,6 +5,8 @@ import com.wurmonline.server.economy.Shop;
 import com.wurmonline.server.items.*;
 import mod.wurmunlimited.WurmTradingTest;
 import mod.wurmunlimited.buyermerchant.PriceList;
+import mod.wurmunlimited.buyermerchant.PurchaseLedgerReader;
+import mod.wurmunlimited.buyermerchant.PurchaseRecord;
 import org.gotti.wurmunlimited.modloader.ReflectionUtil;
 import org.gotti.wurmunlimited.modsupport.ItemTemplateBuilder;
 import org.junit.jupiter.api.BeforeEach;
@@ -12,12 +14,16 @@ import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
 import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import static mod.wurmunlimited.Assert.containsCoinsOfValue;
 import static mod.wurmunlimited.Assert.receivedMessageContaining;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class DeliveryContractsTest extends WurmTradingTest {
@@ -187,8 +193,10 @@ class DeliveryContractsTest extends WurmTradingTest {
         assertEquals(6, playerOffer.getItems().length);
         assertEquals(0, playerToTrade.getItems().length);
         assertTrue(Arrays.asList(playerOffer.getItems()).contains(contract));
-        assertThat(player, receivedMessageContaining("need 15 more pile of dirt"));
-        assertThat(player, receivedMessageContaining("need 5 more heaps of sand"));
+        // Both are sent in one message, in either order.
+        assertThat(player, receivedMessageContaining("15 more pile of dirt"));
+        assertThat(player, receivedMessageContaining("5 more heaps of sand"));
+        assertEquals(1, Arrays.stream(factory.getCommunicator(player).getMessages()).filter(m -> m.contains("will need")).count());
     }
 
     @Test
@@ -330,4 +338,112 @@ class DeliveryContractsTest extends WurmTradingTest {
         assertThat(Arrays.asList(trade.getTradingWindow(3).getItems()),
                 containsCoinsOfValue((long)((dirt * MonetaryConstants.COIN_COPPER) + (sand * MonetaryConstants.COIN_IRON))));
     }
+
+    @Test
+    void testContractPricingWithDifferentQLs() throws PriceList.PriceListFullException, NoSuchTemplateException, IOException, PriceList.PageNotAdded {
+        List<Item> low = new ArrayList<>();
+        factory.createManyItems(ItemList.dirtPile, 4).forEach(low::add);
+        low.forEach(item -> item.setQualityLevel(20));
+        List<Item> high = new ArrayList<>();
+        factory.createManyItems(ItemList.dirtPile, 6).forEach(high::add);
+        high.forEach(item -> item.setQualityLevel(60));
+        insertItemsIntoContract(low);
+        insertItemsIntoContract(high);
+        PriceList priceList = PriceList.getPriceListFromBuyer(buyer);
+        priceList.addItem(ItemList.dirtPile, (byte)0, 1.0f, 1);
+        priceList.addItem(ItemList.dirtPile, (byte)0, 50.0f, 3);
+        priceList.savePriceList();
+        factory.getShop(buyer).setMoney(100000);
+
+        createHandler();
+        playerOffer.addItem(contract);
+        handler.balance();
+
+        assertEquals(1, playerToTrade.getItems().length);
+        assertThat(Arrays.asList(trade.getTradingWindow(3).getItems()), containsCoinsOfValue(4L + 6 * 3));
+    }
+
+    @Test
+    void testContractContentsRecordedInLedgerAtPricePaid() throws Exception {
+        List<Item> low = new ArrayList<>();
+        factory.createManyItems(ItemList.dirtPile, 4).forEach(low::add);
+        low.forEach(item -> item.setQualityLevel(20));
+        List<Item> high = new ArrayList<>();
+        factory.createManyItems(ItemList.dirtPile, 6).forEach(high::add);
+        high.forEach(item -> item.setQualityLevel(60));
+        insertItemsIntoContract(low);
+        insertItemsIntoContract(high);
+        PriceList priceList = PriceList.getPriceListFromBuyer(buyer);
+        priceList.addItem(ItemList.dirtPile, (byte)0, 1.0f, 1);
+        priceList.addItem(ItemList.dirtPile, (byte)0, 50.0f, 3);
+        priceList.savePriceList();
+        factory.getShop(buyer).setMoney(100000);
+
+        createHandler();
+        playerOffer.addItem(contract);
+        handler.balance();
+        Method swapOwners = TradingWindow.class.getDeclaredMethod("swapOwners");
+        swapOwners.setAccessible(true);
+        swapOwners.invoke(playerToTrade);
+        BuyerTradingWindow.stopLoggers();
+
+        List<PurchaseRecord> records = new ArrayList<>();
+        new PurchaseLedgerReader(ledgerDirectory, null, null).forEach(record -> {
+            if (record.shopId == buyer.getWurmId())
+                records.add(record);
+        });
+        assertEquals(10, records.size());
+        for (PurchaseRecord record : records) {
+            assertEquals(ItemList.dirtPile, record.templateId);
+            assertEquals(record.ql < 50 ? 1 : 3, record.price);
+        }
+    }
+
+    @Test
+    void testContractEvaluatedAgainWhenContentsChange() {
+        insertItemsIntoContract(factory.createManyItems(ItemList.dirtPile, 10));
+        addOneCopperItemToPriceList(ItemList.dirtPile);
+        Shop shop = factory.getShop(buyer);
+        shop.setMoney(shop.getMoney() * 10);
+
+        createHandler();
+        playerOffer.addItem(contract);
+        handler.balance();
+        assert playerToTrade.getItems().length == 1;
+
+        playerToTrade.removeItem(contract);
+        playerOffer.addItem(contract);
+        insertItemsIntoContract(factory.createManyItems(ItemList.sand, 1));
+        handler.tradeChanged();
+        handler.balance();
+
+        assertEquals(0, playerToTrade.getItems().length);
+        assertEquals(1, playerOffer.getItems().length);
+        assertThat(player, receivedMessageContaining("not authorised"));
+    }
+
+    @Test
+    void testSignatureChangesWhenWeightMovesBetweenItems() {
+        Item first = factory.createNewItem(ItemList.dirtPile);
+        Item second = factory.createNewItem(ItemList.dirtPile);
+        insertItemsIntoContract(Arrays.asList(first, second));
+        first.setWeight(first.getWeightGrams() - 10, false);
+        long signature = ContractContents.getSignature(contract);
+
+        first.setWeight(first.getWeightGrams() + 1, false);
+        second.setWeight(second.getWeightGrams() - 1, false);
+
+        assertNotEquals(signature, ContractContents.getSignature(contract));
+    }
+
+    @Test
+    void testSignatureChangesWithDamage() {
+        Item item = factory.createNewItem(ItemList.dirtPile);
+        insertItemsIntoContract(Arrays.asList(item, factory.createNewItem(ItemList.dirtPile)));
+        long signature = ContractContents.getSignature(contract);
+
+        item.setDamage(10.0f);
+
+        assertNotEquals(signature, ContractContents.getSignature(contract));
+    }
 }
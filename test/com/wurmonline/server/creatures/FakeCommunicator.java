@@ -17,6 +17,7 @@ public class FakeCommunicator extends Communicator {
     public Boolean tradeAgreed = null;
     public Item sentToInventory;
     public int sentToInventoryPrice;
+    public List<Item> removedFromInventory = new ArrayList<>();
     public boolean sentStartTrading = false;
 
     public FakeCommunicator(Creature creature) {
@@ -89,6 +90,11 @@ public class FakeCommunicator extends Communicator {
         sentToInventoryPrice = price;
     }
 
+    @Override
+    public void sendRemoveFromInventory(Item item, long inventoryWindow) {
+        removedFromInventory.add(item);
+    }
+
     @Override
     public void sendUpdateInventoryItem(Item item) {
 
@@ -35,6 +35,7 @@ class BuyerTradingWindowAdminOptions extends WurmTradingTest {
             BuyerMerchant buyerMerchant = new BuyerMerchant();
             FieldSetter.setField(buyerMerchant, BuyerMerchant.class.getDeclaredField("freeMoney"), freeMoney);
             FieldSetter.setField(buyerMerchant, BuyerMerchant.class.getDeclaredField("destroyBoughtItems"), destroyBoughtItems);
+            FieldSetter.setField(buyerMerchant, BuyerMerchant.class.getDeclaredField("balanceDelay"), 0L);
             buyerMerchant.onServerStarted();
         } catch (NoSuchFieldException e) {
             throw new RuntimeException(e);
@@ -415,6 +416,7 @@ class BuyerTradingWindowAdminOptions extends WurmTradingTest {
         config.setProperty("max_items", Integer.toString(numberOfItems));
         config.setProperty("apply_max_to_merchants", "true");
         BuyerMerchant buyerMerchant = new BuyerMerchant();
+        config.setProperty("balance_delay", "0");
         buyerMerchant.configure(config);
         buyerMerchant.onServerStarted();
         assert BuyerHandler.maxPersonalItems == numberOfItems + 1;
@@ -473,6 +475,7 @@ class BuyerTradingWindowAdminOptions extends WurmTradingTest {
         config.setProperty("max_items", "1.0");
         config.setProperty("apply_max_to_merchant", "true");
         BuyerMerchant buyerMerchant = new BuyerMerchant();
+        config.setProperty("balance_delay", "0");
         buyerMerchant.configure(config);
         buyerMerchant.onServerStarted();
         assert BuyerHandler.maxPersonalItems == 50 + 1;
@@ -506,6 +509,7 @@ class BuyerTradingWindowAdminOptions extends WurmTradingTest {
         config.setProperty("max_items", Integer.toString(numberOfItems));
         config.setProperty("apply_max_to_merchants", "false");
         BuyerMerchant buyerMerchant = new BuyerMerchant();
+        config.setProperty("balance_delay", "0");
         buyerMerchant.configure(config);
         buyerMerchant.onServerStarted();
         assert BuyerHandler.maxPersonalItems == numberOfItems + 1;
@@ -1,12 +1,23 @@
 package com.wurmonline.server.items;
 
 import mod.wurmunlimited.WurmTradingTest;
+import mod.wurmunlimited.buyermerchant.PurchaseLedgerReader;
+import mod.wurmunlimited.buyermerchant.PurchaseRecord;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Logger;
 
+import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
 class BuyerTradingWindowLoggingTest extends WurmTradingTest {
@@ -70,4 +81,96 @@ class BuyerTradingWindowLoggingTest extends WurmTradingTest {
         verify(logger, times(1)).info(contains("My shop is now at 0"));
 
     }
+
+    @Test
+    void testTradeLogWrittenOnStop() throws IOException {
+        makeBuyerTrade();
+        Item item = factory.createNewItem();
+        player.getInventory().insertItem(item);
+        trade.getCreatureTwoRequestWindow().addItem(item);
+        trade.getCreatureTwoRequestWindow().swapOwners();
+        BuyerTradingWindow.stopLoggers();
+
+        Path log = Paths.get("trader" + factory.getShop(buyer).getWurmId() + ".log");
+        String contents = new String(Files.readAllBytes(log), StandardCharsets.UTF_8);
+        assertTrue(contents.contains(buyer.getName() + " received "));
+        assertTrue(contents.contains("id: " + item.getWurmId()));
+        assertEquals(0, TradeLogWriter.getDropped());
+    }
+
+    @Test
+    void testLogFilesLeastRecentlyUsedClosed() {
+        TradeLogFiles files = new TradeLogFiles(2, 1000);
+        Writer first = files.get(900001, 0);
+        files.get(900002, 0);
+        assertSame(first, files.get(900001, 1));
+        files.get(900003, 2);
+
+        assertEquals(2, files.getOpen());
+        assertEquals(1, files.getEvictions());
+        assertSame(first, files.get(900001, 3));
+        assertNotNull(files.get(900002, 4));
+        assertEquals(2, files.getHits());
+        assertEquals(4, files.getMisses());
+        assertEquals(2, files.getEvictions());
+        files.closeAll();
+    }
+
+    @Test
+    void testIdleLogFilesClosedAndReopenedForAppending() throws IOException {
+        Files.deleteIfExists(Paths.get("trader900004.log"));
+        TradeLogFiles files = new TradeLogFiles(10, 1000);
+        files.get(900004, 0).write("first\n");
+        files.get(900005, 500).write("second\n");
+        files.closeIdle(1200);
+
+        assertEquals(1, files.getOpen());
+        assertEquals(1, files.getEvictions());
+        files.get(900004, 1300).write("third\n");
+        files.closeAll();
+
+        String contents = new String(Files.readAllBytes(Paths.get("trader900004.log")), StandardCharsets.UTF_8);
+        assertEquals("first\nthird\n", contents);
+    }
+
+    @Test
+    void testPurchaseRecordedInLedger() throws IOException {
+        makeBuyerTrade();
+        Item item = factory.createNewItem();
+        player.getInventory().insertItem(item);
+        trade.getCreatureTwoRequestWindow().addItem(item);
+        trade.getCreatureTwoRequestWindow().swapOwners();
+        BuyerTradingWindow.stopLoggers();
+
+        List<PurchaseRecord> records = new ArrayList<>();
+        new PurchaseLedgerReader(ledgerDirectory, null, null).forEach(record -> {
+            if (record.shopId == buyer.getWurmId())
+                records.add(record);
+        });
+        assertEquals(1, records.size());
+        PurchaseRecord record = records.get(0);
+        assertEquals(owner.getWurmId(), record.ownerId);
+        assertEquals(player.getWurmId(), record.sellerId);
+        assertEquals(item.getTemplateId(), record.templateId);
+        assertEquals(item.getMaterial(), record.material);
+        assertEquals(item.getQualityLevel(), record.ql);
+        assertEquals(item.getWeightGrams(), record.weight);
+    }
+
+    @Test
+    void testOwnerGivingItemNotRecordedInLedger() throws IOException {
+        makeOwnerBuyerTrade();
+        Item item = factory.createNewItem();
+        owner.getInventory().insertItem(item);
+        trade.getCreatureTwoRequestWindow().addItem(item);
+        trade.getCreatureTwoRequestWindow().swapOwners();
+        BuyerTradingWindow.stopLoggers();
+
+        List<PurchaseRecord> records = new ArrayList<>();
+        new PurchaseLedgerReader(ledgerDirectory, null, null).forEach(record -> {
+            if (record.shopId == buyer.getWurmId())
+                records.add(record);
+        });
+        assertTrue(records.isEmpty());
+    }
 }
@@ -7,6 +7,7 @@ import com.wurmonline.server.economy.Change;
 import com.wurmonline.server.items.*;
 import com.wurmonline.shared.constants.ItemMaterials;
 import mod.wurmunlimited.WurmTradingQuestionTest;
+import mod.wurmunlimited.buyermerchant.MaterialGroups;
 import mod.wurmunlimited.buyermerchant.PriceList;
 import org.junit.jupiter.api.Test;
 
@@ -407,6 +408,31 @@ class AddItemToBuyerQuestionTest extends WurmTradingQuestionTest {
         testMaterialTypeCorrect(factory.getIsWoodId(), (byte)0, false);
     }
 
+    @Test
+    void testMaterialGroupSelected() throws PriceList.NoPriceListOnBuyer {
+        askQuestion();
+        answers.setProperty("templateId", getElementPositionInOptions(com.lastBmlContent, factory.getIsMeatId()));
+        answer();
+        assertTrue(com.lastBmlContent.contains("Accept any meat instead"));
+
+        answers.setProperty("material_group", "true");
+        answer();
+        answers.remove("material_group");
+        answer();
+
+        PriceList.Entry entry = PriceList.getPriceListFromBuyer(buyer).iterator().next();
+        assertEquals(MaterialGroups.ALL_MEAT, entry.getMaterial());
+    }
+
+    @Test
+    void testNoMaterialGroupOptionForDefaultMaterial() {
+        askQuestion();
+        answers.setProperty("templateId", getElementPositionInOptions(com.lastBmlContent, factory.getIsDefaultMaterialId()));
+        answer();
+
+        assertFalse(com.lastBmlContent.contains("material_group"));
+    }
+
     @Test
     void testBackFromFinalQuestionDiffersWhenCustomMaterial() throws NoSuchQuestionException {
         int hatchet = 7;
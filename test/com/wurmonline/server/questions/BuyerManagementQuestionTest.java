@@ -1,13 +1,19 @@
 package com.wurmonline.server.questions;
 
 import com.wurmonline.server.Items;
+import com.wurmonline.server.NoSuchItemException;
 import com.wurmonline.server.creatures.Creature;
 import com.wurmonline.server.creatures.FakeCommunicator;
 import com.wurmonline.server.creatures.NoSuchCreatureException;
 import com.wurmonline.server.items.Item;
+import com.wurmonline.server.items.ItemList;
+import com.wurmonline.server.items.TempItem;
 import com.wurmonline.server.items.WurmMail;
 import com.wurmonline.server.zones.Zones;
 import mod.wurmunlimited.WurmTradingTest;
+import mod.wurmunlimited.buyermerchant.BuyerContracts;
+import mod.wurmunlimited.buyermerchant.BuyerRegistry;
+import mod.wurmunlimited.buyermerchant.PriceList;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -32,7 +38,7 @@ public class BuyerManagementQuestionTest extends WurmTradingTest {
         contract = factory.createBuyerContract();
         owner.getInventory().insertItem(contract);
         placedContract = factory.createBuyerContract();
-        placedContract.setData(buyer.getWurmId());
+        BuyerContracts.bind(placedContract, buyer.getWurmId());
         owner.getInventory().insertItem(placedContract);
         Zones.marketStall = factory.createMarketStallAtCreature(owner);
         Zones.creature = null;
@@ -120,6 +126,13 @@ public class BuyerManagementQuestionTest extends WurmTradingTest {
         assertEquals(contract.getData(), factory.getCreature("Buyer_" + name).getWurmId());
     }
 
+    @Test
+    void testNewBuyerRegistered() throws NoSuchCreatureException {
+        placeBuyer();
+
+        assertTrue(BuyerRegistry.isBuyer(factory.getCreature("Buyer_" + name)));
+    }
+
     @Test
     void testOtherCreaturesBlock() {
         Zones.creature = buyer;
@@ -162,6 +175,34 @@ public class BuyerManagementQuestionTest extends WurmTradingTest {
         assertTrue(factory.getCommunicator(owner).lastNormalServerMessage.startsWith("You dismiss"));
         assertThrows(NoSuchCreatureException.class, () -> factory.getCreature(buyer.getWurmId()));
         assertTrue(buyer.isDead());
+        assertEquals(-1, placedContract.getData());
+    }
+
+    @Test
+    void testUnindexedContractReleasedOnDismiss() {
+        Creature otherBuyer = factory.createNewBuyer(owner);
+        placedContract.setData(otherBuyer.getWurmId());
+
+        askManageQuestion();
+        answers.setProperty(otherBuyer.getWurmId() + "dismiss", "true");
+        question.answer(answers);
+
+        assertTrue(otherBuyer.isDead());
+        assertEquals(-1, placedContract.getData());
+    }
+
+    @Test
+    void testPriceListInvalidatedOnDismiss() throws Exception {
+        PriceList priceList = PriceList.getPriceListFromBuyer(buyer);
+        priceList.addItem(ItemList.hatchet, (byte)0);
+        priceList.savePriceList();
+        TempItem item = priceList.getItems().iterator().next();
+
+        askManageQuestion();
+        answers.setProperty(buyer.getWurmId() + "dismiss", "true");
+        question.answer(answers);
+
+        assertThrows(NoSuchItemException.class, () -> Items.getItem(item.getWurmId()));
     }
 
     @Test
@@ -174,6 +215,30 @@ public class BuyerManagementQuestionTest extends WurmTradingTest {
         assertTrue(factory.getCommunicator(player).lastNormalServerMessage.startsWith("You dismiss"));
         assertThrows(NoSuchCreatureException.class, () -> factory.getCreature(buyer.getWurmId()));
         assertTrue(buyer.isDead());
+        assertEquals(-1, placedContract.getData());
+    }
+
+    @Test
+    void testOnlyBuyersOwnContractReleasedOnDismiss() {
+        Creature otherBuyer = factory.createNewBuyer(owner);
+        Item otherContract = factory.createBuyerContract();
+        BuyerContracts.bind(otherContract, otherBuyer.getWurmId());
+
+        BuyerManagementQuestion.dismissMerchant(null, buyer.getWurmId());
+
+        assertEquals(-1, placedContract.getData());
+        assertEquals(otherBuyer.getWurmId(), otherContract.getData());
+    }
+
+    @Test
+    void testContractReleasedWhenBuyerMissing() {
+        long missingId = buyer.getWurmId() + 1000;
+        BuyerContracts.bind(contract, missingId);
+        askQuestion();
+        question.answer(answers);
+
+        assertEquals(-1, contract.getData());
+        assertThat(owner, receivedMessageContaining("damaged by water"));
     }
 
     @Test
@@ -194,6 +259,7 @@ public class BuyerManagementQuestionTest extends WurmTradingTest {
 
         assertThrows(NoSuchCreatureException.class, () -> factory.getCreature(buyer.getWurmId()));
         assertTrue(buyer.isDead());
+        assertFalse(BuyerRegistry.isBuyer(buyer));
     }
 
     @Test
@@ -8,6 +8,7 @@ import com.wurmonline.server.items.*;
 import com.wurmonline.shared.constants.ItemMaterials;
 import mod.wurmunlimited.WurmTradingQuestionTest;
 import mod.wurmunlimited.buyermerchant.PriceList;
+import mod.wurmunlimited.buyermerchant.PriceTiers;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
@@ -91,6 +92,86 @@ class SetBuyerPricesQuestionTest extends WurmTradingQuestionTest {
         assertEquals(price, item.getPrice());
     }
 
+    @Test
+    void setItemTiers() throws PriceList.PriceListFullException, PriceList.PageNotAdded, IOException, NoSuchTemplateException {
+        Properties answers = generateProperties(1.0f, 100);
+        answers.setProperty("t", "50:150, 70:200");
+        PriceList priceList = PriceList.getPriceListFromBuyer(buyer);
+        priceList.addItem(1,(byte)1,1.0f,1);
+        priceList.savePriceList();
+        PriceList.Entry item = priceList.iterator().next();
+
+        SetBuyerPricesQuestion.setItemDetails(item, -1, answers, factory.createNewCreature());
+        assertEquals(PriceTiers.parse("50:150,70:200"), item.getTiers());
+
+        answers.remove("t");
+        SetBuyerPricesQuestion.setItemDetails(item, -1, answers, factory.createNewCreature());
+        assertEquals(PriceTiers.parse("50:150,70:200"), item.getTiers());
+
+        answers.setProperty("t", "");
+        SetBuyerPricesQuestion.setItemDetails(item, -1, answers, factory.createNewCreature());
+        assertNull(item.getTiers());
+    }
+
+    @Test
+    void setItemTiersInvalid() throws PriceList.PriceListFullException, PriceList.PageNotAdded, IOException, NoSuchTemplateException {
+        Properties answers = generateProperties(1.0f, 100);
+        answers.setProperty("t", "70:200,50:150");
+        PriceList priceList = PriceList.getPriceListFromBuyer(buyer);
+        priceList.addItem(1,(byte)1,1.0f,1);
+        priceList.savePriceList();
+        PriceList.Entry item = priceList.iterator().next();
+
+        Creature creature = factory.createNewCreature();
+        SetBuyerPricesQuestion.setItemDetails(item, -1, answers, creature);
+        assertNull(item.getTiers());
+        assertEquals(100, item.getPrice());
+        assertTrue(factory.getCommunicator(creature).lastNormalServerMessage.startsWith("Failed to set the quality tiers for "));
+    }
+
+    @Test
+    void setItemTiersBelowMinQL() throws PriceList.PriceListFullException, PriceList.PageNotAdded, IOException, NoSuchTemplateException {
+        Properties answers = generateProperties(60.0f, 100);
+        answers.setProperty("t", "50:150,70:200");
+        PriceList priceList = PriceList.getPriceListFromBuyer(buyer);
+        priceList.addItem(1,(byte)1,1.0f,1);
+        priceList.savePriceList();
+        PriceList.Entry item = priceList.iterator().next();
+
+        Creature creature = factory.createNewCreature();
+        SetBuyerPricesQuestion.setItemDetails(item, -1, answers, creature);
+        assertNull(item.getTiers());
+        assertEquals(60.0f, item.getQualityLevel(), 0.01);
+        assertTrue(factory.getCommunicator(creature).lastNormalServerMessage.startsWith("Failed to set the quality tiers for "));
+    }
+
+    @Test
+    void setItemMinQLAboveTiers() throws PriceList.PriceListFullException, PriceList.PageNotAdded, IOException, NoSuchTemplateException {
+        Properties answers = generateProperties(1.0f, 100);
+        answers.setProperty("t", "50:150,70:200");
+        PriceList priceList = PriceList.getPriceListFromBuyer(buyer);
+        priceList.addItem(1,(byte)1,1.0f,1);
+        priceList.savePriceList();
+        PriceList.Entry item = priceList.iterator().next();
+        SetBuyerPricesQuestion.setItemDetails(item, -1, answers, factory.createNewCreature());
+
+        answers = generateProperties(60.0f, 100);
+        Creature creature = factory.createNewCreature();
+        SetBuyerPricesQuestion.setItemDetails(item, -1, answers, creature);
+        assertEquals(1.0f, item.getQualityLevel(), 0.01);
+        assertEquals(PriceTiers.parse("50:150,70:200"), item.getTiers());
+        assertTrue(factory.getCommunicator(creature).lastNormalServerMessage.startsWith("Failed to set the minimum quality level for "));
+    }
+
+    @Test
+    void tiersInputFitsMaxTiers() {
+        StringBuilder tiers = new StringBuilder();
+        for (int i = 0; i < PriceTiers.MAX_TIERS; ++i)
+            tiers.append(i > 0 ? "," : "").append(84 + i).append(".99:").append(Integer.MAX_VALUE);
+        assertDoesNotThrow(() -> PriceTiers.parse(tiers.toString()));
+        assertTrue(tiers.length() <= PriceTiers.MAX_TEXT_LENGTH);
+    }
+
     @Test
     void setItemQLAndPriceNegativeQL() throws PriceList.PriceListFullException, PriceList.PageNotAdded, IOException, NoSuchTemplateException {
         float ql = -100;
@@ -344,6 +425,29 @@ class SetBuyerPricesQuestionTest extends WurmTradingQuestionTest {
         assertEquals(minimumPurchase, item.getMinimumPurchase());
     }
 
+    @Test
+    void testEntryAddedWhileQuestionOpenLeftAlone() throws PriceList.NoPriceListOnBuyer {
+        int templateId = factory.getIsMetalId();
+        addItemToPriceList(templateId, 1.0f, 100);
+        askQuestion();
+        addItemToPriceList(ItemList.hatchet, 1.0f, 10);
+
+        answers = generateProperties(1, 50.0f, 200, 1);
+        assertDoesNotThrow(this::answer);
+
+        PriceList priceList = PriceList.getPriceListFromBuyer(buyer);
+        assertEquals(2, priceList.size());
+        for (PriceList.Entry entry : priceList) {
+            if (entry.getTemplateId() == templateId) {
+                assertEquals(50.0f, entry.getQualityLevel(), 0.01f);
+                assertEquals(200, entry.getPrice());
+            } else {
+                assertEquals(1.0f, entry.getQualityLevel(), 0.01f);
+                assertEquals(10, entry.getPrice());
+            }
+        }
+    }
+
     @Test
     void testRemoveItemFromList() throws IOException, PriceList.PriceListFullException, PriceList.PageNotAdded, NoSuchTemplateException {
         PriceList priceList = PriceList.getPriceListFromBuyer(buyer);
@@ -8,6 +8,7 @@ import com.wurmonline.server.items.*;
 import com.wurmonline.server.players.FakePlayerInfo;
 import com.wurmonline.server.players.Player;
 import mod.wurmunlimited.buyermerchant.BuyerMerchant;
+import mod.wurmunlimited.buyermerchant.BuyerRegistry;
 import mod.wurmunlimited.buyermerchant.PriceList;
 import org.jetbrains.annotations.NotNull;
 import org.mockito.internal.util.reflection.FieldSetter;
@@ -187,6 +188,7 @@ public class WurmObjectsFactory {
 
             shops.put(buyer, FakeShop.createFakeShop(buyer, owner));
             buyer.getInventory().insertItem(createPriceList());
+            BuyerRegistry.add(buyer.getWurmId());
             return buyer;
         } catch (Exception e) {
             throw new RuntimeException(e);
@@ -13,6 +13,7 @@ import com.wurmonline.server.questions.Question;
 import com.wurmonline.server.questions.Questions;
 import com.wurmonline.server.zones.Zones;
 import mod.wurmunlimited.buyermerchant.PriceList;
+import mod.wurmunlimited.buyermerchant.PurchaseLedger;
 import org.junit.AfterClass;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -22,6 +23,8 @@ import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Objects;
 import java.util.logging.Logger;
@@ -37,6 +40,7 @@ public abstract class WurmTradingTest {
     protected WurmObjectsFactory factory;
     protected static final Pattern passthrough = Pattern.compile("passthrough\\{id=\"id\";text=\"([\\d]+)\"}");
     protected static final Pattern defaultOption = Pattern.compile("default=\"([\\d]+)\";");
+    protected static Path ledgerDirectory;
     protected static final Pattern itemAndMaterial = Pattern.compile("harray\\{label\\{text=\"([\\w\\s]+)\"}};harray\\{label\\{text=\"([\\w\\s]+)\"}};");
 
     @BeforeEach
@@ -47,7 +51,13 @@ public abstract class WurmTradingTest {
         FieldSetter.setField(null, Questions.class.getDeclaredField("questions"), new HashMap<Integer, Question>(10));
         BuyerTradingWindow.freeMoney = false;
         BuyerTradingWindow.destroyBoughtItems = false;
+        BuyerTrade.queuedTradeStarter = (next, trader) -> false;
+        PurchaseLedger.close();
+        if (ledgerDirectory == null)
+            ledgerDirectory = Files.createTempDirectory("buyer_ledger");
+        PurchaseLedger.directory = ledgerDirectory;
         BuyerHandler.maxPersonalItems = 51;
+        BuyerHandler.balanceDelay = 0;
         FieldSetter.setField(null, TradeHandler.class.getDeclaredField("maxPersonalItems"), 50);
         factory = new WurmObjectsFactory();
         player = factory.createNewPlayer();
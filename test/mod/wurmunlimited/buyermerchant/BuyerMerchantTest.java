@@ -1,5 +1,6 @@
 package mod.wurmunlimited.buyermerchant;
 
+import com.wurmonline.server.Items;
 import com.wurmonline.server.NoSuchItemException;
 import com.wurmonline.server.NoSuchPlayerException;
 import com.wurmonline.server.Players;
@@ -14,6 +15,7 @@ import com.wurmonline.server.creatures.FakeCommunicator;
 import com.wurmonline.server.creatures.NoSuchCreatureException;
 import com.wurmonline.server.items.*;
 import com.wurmonline.server.kingdom.Kingdom;
+import com.wurmonline.server.players.Player;
 import com.wurmonline.server.questions.Questions;
 import com.wurmonline.server.skills.SkillList;
 import mod.wurmunlimited.WurmTradingTest;
@@ -26,6 +28,9 @@ import java.lang.reflect.Field;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Properties;
 
 import static mod.wurmunlimited.Assert.receivedMessageContaining;
@@ -44,6 +49,15 @@ class BuyerMerchantTest extends WurmTradingTest {
         buyerMerchant = new BuyerMerchant();
         FieldSetter.setField(buyerMerchant, BuyerMerchant.class.getDeclaredField("templateId"), factory.createBuyerContract().getTemplateId());
         method = mock(Method.class);
+        // The initiateTrade hook is not installed in tests, so queued trades go straight to it.
+        BuyerTrade.queuedTradeStarter = (performer, opponent) -> {
+            try {
+                buyerMerchant.initiateTrade(null, method, new Object[] { performer, opponent });
+            } catch (Throwable e) {
+                throw new RuntimeException(e);
+            }
+            return performer.getTrade() != null;
+        };
     }
 
     @Test
@@ -150,6 +164,140 @@ class BuyerMerchantTest extends WurmTradingTest {
         verify(method, never()).invoke(any(), any());
     }
 
+    @Test
+    void initiateTradeBuyerBusyQueuesPlayer() throws Throwable {
+        Creature player2 = factory.createNewPlayer();
+        Creature player3 = factory.createNewPlayer();
+        InvocationHandler handler = (o, method, args) -> buyerMerchant.initiateTrade(o, method, args);
+
+        assertNull(handler.invoke(null, method, new Object[] { player, buyer }));
+        Trade trade = buyer.getTrade();
+        assertNull(handler.invoke(null, method, new Object[] { player2, buyer }));
+        assertNull(handler.invoke(null, method, new Object[] { player3, buyer }));
+        assertNull(handler.invoke(null, method, new Object[] { player2, buyer }));
+
+        assertSame(trade, buyer.getTrade());
+        assertNull(player2.getTrade());
+        assertFalse(factory.getCommunicator(player2).sentStartTrading);
+        assertThat(player2, receivedMessageContaining("number 1 in line"));
+        assertThat(player3, receivedMessageContaining("number 2 in line"));
+        assertEquals(2, CustomerQueue.getWaiting(buyer));
+
+        verify(method, never()).invoke(any(), any());
+    }
+
+    @Test
+    void initiateTradeNextQueuedPlayerStartedWhenTradeEnds() throws Throwable {
+        Creature player2 = factory.createNewPlayer();
+        Creature player3 = factory.createNewPlayer();
+        InvocationHandler handler = (o, method, args) -> buyerMerchant.initiateTrade(o, method, args);
+
+        handler.invoke(null, method, new Object[] { player, buyer });
+        handler.invoke(null, method, new Object[] { player2, buyer });
+        handler.invoke(null, method, new Object[] { player3, buyer });
+        player.getTrade().end(player, true);
+
+        assertNull(player.getTrade());
+        assertNotNull(player2.getTrade());
+        assertSame(player2.getTrade(), buyer.getTrade());
+        assertTrue(factory.getCommunicator(player2).sentStartTrading);
+        assertNull(player3.getTrade());
+        assertEquals(1, CustomerQueue.getWaiting(buyer));
+
+        player2.getTrade().end(player2, true);
+        assertSame(player3.getTrade(), buyer.getTrade());
+        assertEquals(0, CustomerQueue.getWaiting(buyer));
+    }
+
+    @Test
+    void initiateTradeQueuedPlayerWhoLeftSkipped() throws Throwable {
+        Creature player2 = factory.createNewPlayer();
+        Creature player3 = factory.createNewPlayer();
+        InvocationHandler handler = (o, method, args) -> buyerMerchant.initiateTrade(o, method, args);
+
+        handler.invoke(null, method, new Object[] { player, buyer });
+        handler.invoke(null, method, new Object[] { player2, buyer });
+        handler.invoke(null, method, new Object[] { player3, buyer });
+        player2.getStatus().setPositionX(player2.getStatus().getPositionX() + 100);
+        player.getTrade().end(player, true);
+
+        assertNull(player2.getTrade());
+        assertSame(player3.getTrade(), buyer.getTrade());
+    }
+
+    @Test
+    void initiateTradeQueuedPlayerStartedThroughInitiateTrade() throws Throwable {
+        Creature player2 = factory.createNewPlayer();
+        InvocationHandler handler = (o, method, args) -> buyerMerchant.initiateTrade(o, method, args);
+        List<Creature> started = new ArrayList<>();
+        BuyerTrade.queuedTradeStarter = (performer, opponent) -> {
+            started.add(performer);
+            started.add(opponent);
+            return true;
+        };
+
+        handler.invoke(null, method, new Object[] { player, buyer });
+        handler.invoke(null, method, new Object[] { player2, buyer });
+        player.getTrade().end(player, true);
+
+        assertEquals(2, started.size());
+        assertSame(player2, started.get(0));
+        assertSame(buyer, started.get(1));
+    }
+
+    @Test
+    void initiateTradeNextQueuedPlayerStartedIfFirstFails() throws Throwable {
+        Creature player2 = factory.createNewPlayer();
+        Creature player3 = factory.createNewPlayer();
+        InvocationHandler handler = (o, method, args) -> buyerMerchant.initiateTrade(o, method, args);
+        List<Creature> tried = new ArrayList<>();
+        BuyerTrade.queuedTradeStarter = (performer, opponent) -> {
+            tried.add(performer);
+            return performer == player3;
+        };
+
+        handler.invoke(null, method, new Object[] { player, buyer });
+        handler.invoke(null, method, new Object[] { player2, buyer });
+        handler.invoke(null, method, new Object[] { player3, buyer });
+        player.getTrade().end(player, true);
+
+        assertEquals(Arrays.asList(player2, player3), tried);
+        assertEquals(0, CustomerQueue.getWaiting(buyer));
+    }
+
+    @Test
+    void initiateTradeQueuedPlayerRemovedOnLogout() throws Throwable {
+        Player player2 = factory.createNewPlayer();
+        Creature player3 = factory.createNewPlayer();
+        InvocationHandler handler = (o, method, args) -> buyerMerchant.initiateTrade(o, method, args);
+
+        handler.invoke(null, method, new Object[] { player, buyer });
+        handler.invoke(null, method, new Object[] { player2, buyer });
+        handler.invoke(null, method, new Object[] { player3, buyer });
+        assert CustomerQueue.getWaiting(buyer) == 2;
+
+        buyerMerchant.onPlayerLogout(player2);
+        assertEquals(1, CustomerQueue.getWaiting(buyer));
+
+        player.getTrade().end(player, true);
+        assertNull(player2.getTrade());
+        assertSame(player3.getTrade(), buyer.getTrade());
+    }
+
+    @Test
+    void initiateTradeWaitEstimatedFromRecentTrades() throws Throwable {
+        Creature player2 = factory.createNewPlayer();
+        InvocationHandler handler = (o, method, args) -> buyerMerchant.initiateTrade(o, method, args);
+
+        handler.invoke(null, method, new Object[] { player, buyer });
+        handler.invoke(null, method, new Object[] { player2, buyer });
+        assertThat(player2, receivedMessageContaining("line.'"));
+
+        player.getTrade().end(player, true);
+        handler.invoke(null, method, new Object[] { player, buyer });
+        assertThat(player, receivedMessageContaining("it should not be long"));
+    }
+
     @Test
     void getTradeHandler() throws Throwable {
         InvocationHandler handler = (o, method, args) -> buyerMerchant.getTradeHandler(o, method, args);
@@ -488,6 +636,7 @@ class BuyerMerchantTest extends WurmTradingTest {
             Item priceList = buyer.getInventory().getFirstContainedItem();
             assert PriceList.isPriceList(priceList);
             buyer.setName("Merchant_Albert");
+            BuyerRegistry.remove(buyer.getWurmId());
             assert !BuyerMerchant.isBuyer(buyer);
             buyer.getInventory().insertItem(item);
             Creature enemy = factory.createNewPlayer();
@@ -628,12 +777,14 @@ class BuyerMerchantTest extends WurmTradingTest {
         verify(method, never()).invoke(null, args1);
         assertTrue(buyer.isDead());
         assertThrows(NoSuchCreatureException.class, () -> factory.getCreature(buyer.getWurmId()));
+        assertFalse(BuyerMerchant.isBuyer(buyer));
     }
 
     @Test
     void dismissMerchantNotBuyer() throws Throwable {
         ItemsPackageFactory.removeItem(buyer, buyer.getInventory().getFirstContainedItem());
         buyer.setName("Merchant_Fred");
+        BuyerRegistry.remove(buyer.getWurmId());
         assert !BuyerMerchant.isBuyer(buyer);
         InvocationHandler handler = (o, method, args) -> buyerMerchant.dismissMerchant(o, method, args);
         Object[] args1 = new Object[] {player, buyer.getWurmId()};
@@ -652,6 +803,50 @@ class BuyerMerchantTest extends WurmTradingTest {
         handler.invoke(buyer, method, args1);
         verify(method, times(1)).invoke(buyer, args1);
         assertFalse(priceList.hasNoDecay());
+        assertFalse(BuyerMerchant.isBuyer(buyer));
+    }
+
+    @Test
+    void dieInvalidatesPriceList() throws Throwable {
+        PriceList priceList = PriceList.getPriceListFromBuyer(buyer);
+        priceList.addItem(ItemList.hatchet, (byte)0);
+        priceList.savePriceList();
+        TempItem item = priceList.getItems().iterator().next();
+        InvocationHandler handler = (o, method, args) -> buyerMerchant.die(o, method, args);
+
+        handler.invoke(buyer, method, new Object[] {true, ""});
+        assertThrows(NoSuchItemException.class, () -> Items.getItem(item.getWurmId()));
+    }
+
+    @Test
+    void isBuyerOnlyForRegisteredBuyers() {
+        Creature trader = factory.createNewTrader();
+        trader.setName("Buyer_Fred");
+
+        assertTrue(BuyerMerchant.isBuyer(buyer));
+        assertFalse(BuyerMerchant.isBuyer(trader));
+        assertFalse(BuyerMerchant.isBuyer(player));
+
+        BuyerRegistry.add(trader.getWurmId());
+        assertTrue(BuyerMerchant.isBuyer(trader));
+        assertTrue(BuyerMerchant.isBuyer(buyer));
+        BuyerRegistry.remove(buyer.getWurmId());
+        assertFalse(BuyerMerchant.isBuyer(buyer));
+        assertTrue(BuyerMerchant.isBuyer(trader));
+    }
+
+    @Test
+    void buyerRegistryGrows() {
+        List<Creature> buyers = new ArrayList<>();
+        for (int i = 0; i < 50; ++i)
+            buyers.add(factory.createNewBuyer(owner));
+
+        for (Creature creature : buyers)
+            assertTrue(BuyerMerchant.isBuyer(creature));
+        for (int i = 0; i < buyers.size(); i += 2)
+            BuyerRegistry.remove(buyers.get(i).getWurmId());
+        for (int i = 0; i < buyers.size(); ++i)
+            assertEquals(i % 2 == 1, BuyerMerchant.isBuyer(buyers.get(i)));
     }
 
     @Test
@@ -665,6 +860,11 @@ class BuyerMerchantTest extends WurmTradingTest {
         verify(p, never()).getInventory();
     }
 
+    @Test
+    void hookHandlesFound() {
+        assertTrue(HookHandles.init());
+    }
+
     @Test
     void stopLoggers() throws Throwable {
         InvocationHandler handler = (o, method, args) -> buyerMerchant.stopLoggers(o, method, args);
@@ -738,6 +938,34 @@ class BuyerMerchantTest extends WurmTradingTest {
         assertNotEquals(180.0f, trader.getStatus().getRotation());
     }
 
+    @Test
+    void testBalanceDelay() {
+        Properties properties = new Properties();
+        properties.setProperty("balance_delay", "150");
+        buyerMerchant.configure(properties);
+
+        try {
+            buyerMerchant.onServerStarted();
+            assertEquals(150, BuyerHandler.balanceDelay);
+        } finally {
+            BuyerHandler.balanceDelay = 0;
+        }
+    }
+
+    @Test
+    void testInvalidBalanceDelay() {
+        Properties properties = new Properties();
+        properties.setProperty("balance_delay", "-1");
+        buyerMerchant.configure(properties);
+
+        try {
+            buyerMerchant.onServerStarted();
+            assertEquals(250, BuyerHandler.balanceDelay);
+        } finally {
+            BuyerHandler.balanceDelay = 0;
+        }
+    }
+
     @Test
     void testUpdateTradersContractsOnTrader() throws IllegalAccessException, NoSuchFieldException {
         Field contractsOnTraders = BuyerMerchant.class.getDeclaredField("contractsOnTraders");
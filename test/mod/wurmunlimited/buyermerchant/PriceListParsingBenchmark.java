@@ -0,0 +1,91 @@
+package mod.wurmunlimited.buyermerchant;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares reading a full legacy page with LegacyInscription against the old split based parsing, and against
+ * reading the same entries from a compact page.  Run with main() from the test classpath.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PriceListParsingBenchmark {
+
+    private String legacyPage;
+    private String compactPage;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        StringBuilder legacy = new StringBuilder(500);
+        StringBuilder compact = new StringBuilder(500);
+        CompactInscription.appendHeader(compact);
+        while (true) {
+            int template = random.nextInt(1000) + 1;
+            byte material = (byte)random.nextInt(100);
+            float minQL = random.nextInt(10000) / 100f;
+            int price = random.nextInt(100000);
+            int minimumPurchase = random.nextInt(4) == 0 ? random.nextInt(100) + 1 : 1;
+            String line = template + "," + material + "," + minQL + "," + price + (minimumPurchase != 1 ? "," + minimumPurchase : "") + "\n";
+            if (legacy.length() + line.length() > 500)
+                break;
+            legacy.append(line);
+            CompactInscription.append(compact, template, material, minQL, price, minimumPurchase, null);
+        }
+        legacyPage = legacy.toString();
+        compactPage = compact.toString();
+    }
+
+    @Benchmark
+    public void splitLegacy(Blackhole blackhole) {
+        for (String entry : legacyPage.split("\n")) {
+            String[] entries = entry.split(",");
+            blackhole.consume(Integer.parseInt(entries[0]));
+            blackhole.consume(Byte.parseByte(entries[1]));
+            blackhole.consume(Float.parseFloat(entries[2]));
+            blackhole.consume(Integer.parseInt(entries[3]));
+            if (entries.length == 5)
+                blackhole.consume(Integer.parseInt(entries[4]));
+        }
+    }
+
+    @Benchmark
+    public void cursorLegacy(Blackhole blackhole) {
+        LegacyInscription reader = new LegacyInscription(legacyPage);
+        while (reader.hasNext()) {
+            reader.next();
+            blackhole.consume(reader.template);
+            blackhole.consume(reader.material);
+            blackhole.consume(reader.minQL);
+            blackhole.consume(reader.price);
+            blackhole.consume(reader.minimumPurchase);
+        }
+    }
+
+    @Benchmark
+    public void cursorCompact(Blackhole blackhole) {
+        CompactInscription reader = new CompactInscription(compactPage);
+        while (reader.hasNext()) {
+            reader.next();
+            blackhole.consume(reader.template);
+            blackhole.consume(reader.material);
+            blackhole.consume(reader.minQL);
+            blackhole.consume(reader.price);
+            blackhole.consume(reader.minimumPurchase);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(PriceListParsingBenchmark.class.getSimpleName()).build()).run();
+    }
+}
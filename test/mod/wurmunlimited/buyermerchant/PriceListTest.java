@@ -64,6 +64,107 @@ public class PriceListTest {
         assertDoesNotThrow(() -> PriceList.getPriceListFromBuyer(buyer));
     }
 
+    @Test
+    void testPriceListFromBuyerIsCached() throws PriceList.NoPriceListOnBuyer {
+        Creature buyer = factory.createNewBuyer(factory.createNewPlayer());
+        PriceList priceList = PriceList.getPriceListFromBuyer(buyer);
+        assertSame(priceList, PriceList.getPriceListFromBuyer(buyer));
+    }
+
+    @Test
+    void testEditingCopyOnlySeenOnceSaved() throws Exception {
+        Creature buyer = factory.createNewBuyer(factory.createNewPlayer());
+        PriceList priceList = PriceList.getPriceListFromBuyer(buyer);
+        priceList.addItem(1, (byte)1, 1.0f, 10);
+        priceList.savePriceList();
+
+        PriceList editing = PriceList.getPriceListForEditing(buyer);
+        assertNotSame(PriceList.getPriceListFromBuyer(buyer), editing);
+        editing.iterator().next().updateItemDetails(1.0f, 20, 1);
+        assertEquals(10, PriceList.getPriceListFromBuyer(buyer).iterator().next().getPrice());
+
+        editing.savePriceList();
+        assertSame(editing, PriceList.getPriceListFromBuyer(buyer));
+        assertEquals(20, PriceList.getPriceListFromBuyer(buyer).iterator().next().getPrice());
+    }
+
+    @Test
+    void testCachedPriceListReplacedAfterSave() throws PriceList.NoPriceListOnBuyer, PriceList.PriceListFullException, PriceList.PageNotAdded, NoSuchTemplateException, IOException {
+        Creature buyer = factory.createNewBuyer(factory.createNewPlayer());
+        PriceList priceList = PriceList.getPriceListFromBuyer(buyer);
+        priceList.addItem(1, (byte)1, 1.0f, 10);
+        priceList.savePriceList();
+
+        PriceList cached = PriceList.getPriceListFromBuyer(buyer);
+        assertSame(priceList, cached);
+        assertEquals(1, cached.size());
+    }
+
+    @Test
+    void testCachedPriceListNotUsedWithUnsavedChanges() throws PriceList.NoPriceListOnBuyer, PriceList.PriceListFullException, NoSuchTemplateException, IOException {
+        Creature buyer = factory.createNewBuyer(factory.createNewPlayer());
+        PriceList priceList = PriceList.getPriceListFromBuyer(buyer);
+        priceList.addItem(1, (byte)1, 1.0f, 10);
+
+        PriceList reloaded = PriceList.getPriceListFromBuyer(buyer);
+        assertNotSame(priceList, reloaded);
+        assertEquals(0, reloaded.size());
+    }
+
+    @Test
+    void testCachedPriceListNotUsedAfterInscriptionChanged() throws PriceList.NoPriceListOnBuyer {
+        Creature buyer = factory.createNewBuyer(factory.createNewPlayer());
+        Item priceListItem = buyer.getInventory().getFirstContainedItem();
+        Item page = factory.createNewItem(ItemList.papyrusSheet);
+        priceListItem.insertItem(page);
+        page.setDescription("Buy List Page 1");
+        page.setInscription(one, "");
+        PriceList priceList = PriceList.getPriceListFromBuyer(buyer);
+        assertEquals(1, priceList.size());
+
+        page.setInscription(Joiner.on("\n").join(one, two), "");
+        PriceList reloaded = PriceList.getPriceListFromBuyer(buyer);
+        assertNotSame(priceList, reloaded);
+        assertEquals(2, reloaded.size());
+    }
+
+    @Test
+    void testCachedPriceListUsedWhenInscriptionRewrittenUnchanged() throws PriceList.NoPriceListOnBuyer {
+        Creature buyer = factory.createNewBuyer(factory.createNewPlayer());
+        Item priceListItem = buyer.getInventory().getFirstContainedItem();
+        Item page = factory.createNewItem(ItemList.papyrusSheet);
+        priceListItem.insertItem(page);
+        page.setDescription("Buy List Page 1");
+        page.setInscription(one, "");
+        PriceList priceList = PriceList.getPriceListFromBuyer(buyer);
+
+        page.setInscription(new String(one), "");
+        assertSame(priceList, PriceList.getPriceListFromBuyer(buyer));
+    }
+
+    @Test
+    void testReplacedPriceListItemsKeptUntilTradesEnd() throws PriceList.NoPriceListOnBuyer, PriceList.PriceListFullException, PriceList.PageNotAdded, NoSuchTemplateException, IOException {
+        Creature buyer = factory.createNewBuyer(factory.createNewPlayer());
+        PriceList priceList = PriceList.getPriceListFromBuyer(buyer);
+        priceList.addItem(ItemList.hatchet, (byte)0);
+        priceList.savePriceList();
+        TempItem item = priceList.getItems().iterator().next();
+        priceList.tradeStarted();
+
+        PriceList.invalidate(buyer.getInventory().getFirstContainedItem());
+        assertDoesNotThrow(() -> Items.getItem(item.getWurmId()));
+        priceList.tradeEnded();
+        assertThrows(NoSuchItemException.class, () -> Items.getItem(item.getWurmId()));
+    }
+
+    @Test
+    void testInvalidateRemovesCachedPriceList() throws PriceList.NoPriceListOnBuyer {
+        Creature buyer = factory.createNewBuyer(factory.createNewPlayer());
+        PriceList priceList = PriceList.getPriceListFromBuyer(buyer);
+        PriceList.invalidate(buyer.getInventory().getFirstContainedItem());
+        assertNotSame(priceList, PriceList.getPriceListFromBuyer(buyer));
+    }
+
     @Test
     @SuppressWarnings("OptionalGetWithoutIsPresent")
     void testNoPriceListException() {
@@ -93,22 +194,150 @@ public class PriceListTest {
 
     @Test
     void testAddingAboveMaxPageSize() throws PriceList.PriceListFullException, NoSuchTemplateException, IOException, PriceList.PageNotAdded {
+        Item priceListItem = createPriceList("");
+        PriceList priceList = new PriceList(priceListItem);
+        for (int i = 1; i <= 100; i++)
+            priceList.addItem(i, (byte)2, 1.0f, 10);
+        priceList.savePriceList();
+        assertEquals(2, priceListItem.getItemCount());
+    }
+
+    @Test
+    void testLegacyPageMigratedOnSave() throws PriceList.PriceListFullException, NoSuchTemplateException, IOException, PriceList.PageNotAdded {
         StringBuilder stringBuilder = new StringBuilder(512);
         for (int i = 1; i <= 46; i++)
             stringBuilder.append(i).append(",1,1.0,1\n");
         String str = stringBuilder.toString();
-        System.out.println(stringBuilder.length());
         assert str.length() <= 500;
         Item priceListItem = createPriceList(str);
         PriceList priceList = new PriceList(priceListItem);
         assertEquals(1, priceListItem.getItemCount());
         priceList.addItem(1, (byte)2, 1.0f, 10);
         priceList.savePriceList();
-        assertEquals(2, priceListItem.getItemCount());
+
+        assertEquals(1, priceListItem.getItemCount());
+        String inscription = Objects.requireNonNull(priceListItem.getFirstContainedItem().getInscription()).getInscription();
+        assertTrue(inscription.startsWith("~" + CompactInscription.VERSION));
+        PriceList reloaded = new PriceList(priceListItem);
+        assertEquals(47, reloaded.size());
+        assertArrayEquals(Arrays.stream(priceList.asArray()).map(PriceList.Entry::toString).toArray(),
+                Arrays.stream(reloaded.asArray()).map(PriceList.Entry::toString).toArray());
+    }
+
+    @Test
+    void testBadCompactEntryRemovesRestOfPage() {
+        StringBuilder sb = new StringBuilder();
+        CompactInscription.appendHeader(sb);
+        CompactInscription.append(sb, 1, (byte)1, 1.0f, 10, 1, null);
+        CompactInscription.append(sb, 2, (byte)2, 2.1f, -1, 100, null);
+        sb.append("!");
+        PriceList priceList = new PriceList(createPriceList(sb.toString()));
+
+        assertEquals(2, priceList.size());
+        assertEquals("2,2,2.1,-1,100", priceList.asArray()[1].toString());
+    }
+
+    @Test
+    void testPriceTiersSavedAndLoaded() throws PriceList.PriceListFullException, PriceList.PageNotAdded, NoSuchTemplateException, IOException {
+        Item priceListItem = createPriceList("");
+        PriceList priceList = new PriceList(priceListItem);
+        PriceList.Entry entry = priceList.addItem(1, (byte)1, 10.0f, 100);
+        priceList.addItem(2, (byte)2, 1.0f, 7, 3);
+        entry.updateItemDetails(10.0f, 100, 1, PriceTiers.parse("50:150,70.5:200,90:-1"));
+        priceList.savePriceList();
+
+        PriceList reloaded = new PriceList(priceListItem);
+        assertEquals(PriceTiers.parse("50:150,70.5:200,90:-1"), reloaded.asArray()[0].getTiers());
+        assertNull(reloaded.asArray()[1].getTiers());
+        assertEquals("2,2,1.0,7,3", reloaded.asArray()[1].toString());
+    }
+
+    @Test
+    void testPriceFromTiers() throws PriceList.PriceListFullException, PriceList.PageNotAdded, NoSuchTemplateException, IOException {
+        PriceList priceList = new PriceList(createPriceList(""));
+        PriceList.Entry entry = priceList.addItem(1, (byte)1, 10.0f, 100);
+        entry.updateItemDetails(10.0f, 100, 1, PriceTiers.parse("50:150,70.5:200,90:-1"));
+
+        assertAll(
+                () -> assertEquals(100, entry.getPrice(20)),
+                () -> assertEquals(150, entry.getPrice(50)),
+                () -> assertEquals(150, entry.getPrice(70.49f)),
+                () -> assertEquals(200, entry.getPrice(70.5f)),
+                () -> assertEquals(-1, entry.getPrice(95))
+        );
+    }
+
+    @Test
+    void testVersion2PageStillRead() {
+        // Template 5, material 3, 10ql, 100i, minimum 3.
+        PriceList priceList = new PriceList(createPriceList("~2FDofoGC"));
+
+        assertEquals(1, priceList.size());
+        assertEquals("5,3,10.0,100,3", priceList.asArray()[0].toString());
+        assertNull(priceList.asArray()[0].getTiers());
+    }
+
+    @Test
+    void testVersion3PageStillRead() {
+        // Template 5, material 3, 10ql, 100i, minimum 3, no tiers.
+        PriceList priceList = new PriceList(createPriceList("~3FDofoGE"));
+
+        assertEquals(1, priceList.size());
+        assertEquals("5,3,10.0,100,3", priceList.asArray()[0].toString());
+    }
+
+    @Test
+    void testLegacyMinQLUnchangedByMigration() throws PriceList.PriceListFullException, PriceList.PageNotAdded {
+        Item priceListItem = createPriceList("7,42,33.333,10\n7,42,12.5,10");
+        PriceList priceList = new PriceList(priceListItem);
+        priceList.savePriceList();
+
+        PriceList reloaded = new PriceList(priceListItem);
+        assertEquals(33.333f, reloaded.asArray()[0].getQualityLevel());
+        assertEquals(12.5f, reloaded.asArray()[1].getQualityLevel());
+        assertEquals(priceList.asArray()[0], reloaded.asArray()[0]);
     }
 
     @Test
-    void testAddingAboveMaxBookSize() {
+    void testInvalidPriceTiers() {
+        assertThrows(NumberFormatException.class, () -> PriceTiers.parse("70:200,50:150"));
+        assertThrows(NumberFormatException.class, () -> PriceTiers.parse("101:200"));
+        assertThrows(NumberFormatException.class, () -> PriceTiers.parse("50:-2"));
+        assertThrows(NumberFormatException.class, () -> PriceTiers.parse("50"));
+    }
+
+    @Test
+    void testLegacyBadLineSkippedWithOffset() {
+        LegacyInscription reader = new LegacyInscription(one + "\n\n1,abc,1.0,10\n" + two + ",5\n");
+        assertTrue(reader.hasNext());
+        reader.next();
+        assertEquals(1, reader.template);
+
+        assertTrue(reader.hasNext());
+        NumberFormatException e = assertThrows(NumberFormatException.class, reader::next);
+        assertEquals(one.length() + 2, reader.getRecordStart());
+        assertEquals("1,abc,1.0,10", reader.getRecord());
+        assertTrue(e.getMessage().endsWith("at " + (one.length() + 4)), e.getMessage());
+
+        assertTrue(reader.hasNext());
+        reader.next();
+        assertEquals(2, reader.template);
+        assertEquals((byte)2, reader.material);
+        assertEquals(2.1f, reader.minQL);
+        assertEquals(20, reader.price);
+        assertEquals(5, reader.minimumPurchase);
+        assertFalse(reader.hasNext());
+    }
+
+    @Test
+    void testLegacyPageWithBadLineKeepsOtherEntries() {
+        PriceList priceList = new PriceList(createPriceList(Joiner.on("\n").join(one, "1,1,1.0", two)));
+        assertEquals(2, priceList.size());
+        assertEquals(two, priceList.asArray()[1].toString());
+    }
+
+    @Test
+    void testLegacyFullBookHasSpaceAfterMigration() {
         Item priceListItem = createPriceList("");
         StringBuilder stringBuilder = new StringBuilder(512);
         for (int i = 1; i <= 10; ++i) {
@@ -124,7 +353,10 @@ public class PriceListTest {
 
         assert priceListItem.getItemCount() == 10;
         PriceList priceList = new PriceList(priceListItem);
-        assertThrows(PriceList.PriceListFullException.class, () -> priceList.addItem(1, (byte)2, 1.0f, 10));
+        assertDoesNotThrow(() -> priceList.addItem(1, (byte)2, 1.0f, 10));
+        assertDoesNotThrow(priceList::savePriceList);
+        assertTrue(priceListItem.getItemCount() < 10);
+        assertEquals(501, new PriceList(priceListItem).size());
     }
 
     @Test
@@ -156,14 +388,18 @@ public class PriceListTest {
     }
 
     @Test
-    void testUpdateAboveMaxSize() {
-        StringBuilder stringBuilder = new StringBuilder(512);
-        for (int i = 0; i <= 49; ++i)
-            stringBuilder.append(one);
-        String str = stringBuilder.toString();
-        assert str.length() <= 500;
-        PriceList priceList = new PriceList(createPriceList(str));
-        assertThrows(PriceList.PriceListFullException.class, () -> priceList.iterator().next().updateItem(2, (byte)2, 2, 10000000, 1));
+    void testUpdateAboveMaxSize() throws IOException, NoSuchTemplateException {
+        PriceList priceList = new PriceList(createPriceList(""));
+        int templateId = 100;
+        while (true) {
+            try {
+                templateId++;
+                priceList.addItem(templateId, (byte)1);
+            } catch (PriceList.PriceListFullException e) {
+                break;
+            }
+        }
+        assertThrows(PriceList.PriceListFullException.class, () -> priceList.iterator().next().updateItem(2, (byte)2, 2, Integer.MAX_VALUE, Integer.MAX_VALUE));
     }
 
     @Test
@@ -216,6 +452,44 @@ public class PriceListTest {
         assertEquals(PriceList.unauthorised, priceList.getPrice(item));
     }
 
+    @Test
+    void testGetPricePrefersHighestMinQLAcrossAnyMaterial() {
+        PriceList priceList = new PriceList(createPriceList("1,1,10.0,10\n1,0,50.0,20\n1,1,70.0,30"));
+        Item item = factory.createNewItem();
+        item.setTemplateId(1);
+        item.setMaterial((byte)1);
+
+        item.setQualityLevel(5.0f);
+        assertEquals(PriceList.unauthorised, priceList.getPrice(item));
+        item.setQualityLevel(20.0f);
+        assertEquals(10, priceList.getPrice(item));
+        item.setQualityLevel(60.0f);
+        assertEquals(20, priceList.getPrice(item));
+        item.setQualityLevel(80.0f);
+        assertEquals(30, priceList.getPrice(item));
+        item.setMaterial((byte)2);
+        assertEquals(20, priceList.getPrice(item));
+    }
+
+    @Test
+    void testGetPriceUpdatedAfterChanges() throws PriceList.PriceListFullException, NoSuchTemplateException, IOException {
+        PriceList priceList = new PriceList(createPriceList(one));
+        Item item = factory.createNewItem();
+        item.setTemplateId(1);
+        item.setMaterial((byte)1);
+        item.setQualityLevel(50.0f);
+        assertEquals(10, priceList.getPrice(item));
+
+        PriceList.Entry entry = priceList.addItem(1, (byte)1, 40.0f, 15);
+        assertEquals(15, priceList.getPrice(item));
+
+        entry.updateItemDetails(60.0f, 15, 1);
+        assertEquals(10, priceList.getPrice(item));
+
+        priceList.removeItem(priceList.iterator().next());
+        assertEquals(PriceList.unauthorised, priceList.getPrice(item));
+    }
+
     @Test
     void testIsPriceList() {
         Item item = factory.createPriceList();
@@ -233,12 +507,12 @@ public class PriceListTest {
     void testPriceItemUsesMinQLOnInvalidValue() throws PriceList.PriceListFullException {
         PriceList priceList = new PriceList(createPriceList(one));
         PriceList.Entry item = priceList.iterator().next();
-        float ql = item.minQL;
+        float ql = item.getQualityLevel();
 
-        item.updateItem(item.template, item.material, 101, item.price, 1);
-        assertEquals(ql, item.minQL);
-        item.updateItem(item.template, item.material, -0.1f, item.price, 1);
-        assertEquals(ql, item.minQL);
+        item.updateItem(item.getTemplateId(), item.getMaterial(), 101, item.getPrice(), 1);
+        assertEquals(ql, item.getQualityLevel());
+        item.updateItem(item.getTemplateId(), item.getMaterial(), -0.1f, item.getPrice(), 1);
+        assertEquals(ql, item.getQualityLevel());
     }
 
     @Test
@@ -357,7 +631,7 @@ public class PriceListTest {
     void testRemoveItem() {
         PriceList priceList = new PriceList(createPriceList(one + "\n" + two));
         assertEquals(2, priceList.getItems().size());
-        PriceList.Entry item = priceList.stream().filter(e -> e.template == 1).findAny().orElseThrow(RuntimeException::new);
+        PriceList.Entry item = priceList.stream().filter(e -> e.getTemplateId() == 1).findAny().orElseThrow(RuntimeException::new);
 
         priceList.removeItem(item);
 
@@ -365,6 +639,37 @@ public class PriceListTest {
         assertEquals(2, priceList.getItems().iterator().next().getTemplateId());
     }
 
+    @Test
+    void testRemovedEntryKeepsValues() {
+        PriceList priceList = new PriceList(createPriceList(one + "\n" + two));
+        PriceList.Entry first = priceList.asArray()[0];
+
+        priceList.removeItem(first);
+
+        assertEquals(1, priceList.size());
+        assertEquals(one, first.toString());
+        assertEquals(two, priceList.asArray()[0].toString());
+    }
+
+    @Test
+    void testCopyKeepsValuesAfterListChanges() {
+        PriceList priceList = new PriceList(createPriceList(one + "\n" + two));
+        PriceList.Entry second = priceList.asArray()[1].copy();
+
+        priceList.removeItem(priceList.new Entry(one));
+
+        assertEquals(two, second.toString());
+        assertEquals(second, priceList.asArray()[0]);
+    }
+
+    @Test
+    void testEqualEntryReturnedForRow() {
+        PriceList priceList = new PriceList(createPriceList(one + "\n" + two));
+        assertEquals(priceList.asArray()[0], priceList.iterator().next());
+        assertEquals(priceList.new Entry(two), priceList.asArray()[1]);
+        assertEquals(priceList.new Entry(two).hashCode(), priceList.asArray()[1].hashCode());
+    }
+
     @Test
     void testAnyMaterialGetsPriceCorrectly() throws IOException, PriceList.PriceListFullException, NoSuchTemplateException, PriceList.PageNotAdded {
         Item item = factory.createNewItem(factory.getIsWoodId());
@@ -380,6 +685,52 @@ public class PriceListTest {
         }
     }
 
+    @Test
+    void testMaterialGroupGetsPriceCorrectly() throws IOException, PriceList.PriceListFullException, NoSuchTemplateException, PriceList.PageNotAdded {
+        Item item = factory.createNewItem(factory.getIsWoodId());
+        Creature buyer = factory.createNewBuyer(factory.createNewPlayer());
+        int price = 101;
+        PriceList priceList = PriceList.getPriceListFromBuyer(buyer);
+        priceList.addItem(item.getTemplateId(), MaterialGroups.ALL_WOOD, 1.0f, price);
+        priceList.savePriceList();
+
+        Set<Byte> woods = new HashSet<>();
+        for (byte material : MaterialGroups.getMaterials(MaterialGroups.ALL_WOOD))
+            woods.add(material);
+        for (byte i = 0; i < ItemMaterials.MATERIAL_MAX; ++i) {
+            item.setMaterial(i);
+            assertEquals(woods.contains(i) ? price : -1, priceList.getPrice(item));
+        }
+    }
+
+    @Test
+    void testHigherMinQLPreferredOverMaterialGroup() throws IOException, PriceList.PriceListFullException, NoSuchTemplateException {
+        Item item = factory.createNewItem(factory.getIsWoodId());
+        item.setMaterial(ItemMaterials.MATERIAL_WOOD_OAK);
+        item.setQualityLevel(50);
+        PriceList priceList = new PriceList(createPriceList(""));
+        priceList.addItem(item.getTemplateId(), MaterialGroups.ALL_WOOD, 1.0f, 10);
+        priceList.addItem(item.getTemplateId(), ItemMaterials.MATERIAL_WOOD_OAK, 1.0f, 20);
+
+        assertEquals(20, priceList.getPrice(item));
+
+        priceList.addItem(item.getTemplateId(), MaterialGroups.ALL_WOOD, 40.0f, 30);
+        assertEquals(30, priceList.getPrice(item));
+    }
+
+    @Test
+    void testMaterialGroupSavedAndLoaded() throws IOException, PriceList.PriceListFullException, NoSuchTemplateException, PriceList.PageNotAdded {
+        Item priceListItem = createPriceList("");
+        PriceList priceList = new PriceList(priceListItem);
+        priceList.addItem(factory.getIsMeatId(), MaterialGroups.ALL_MEAT, 1.0f, 10);
+        priceList.savePriceList();
+
+        PriceList.Entry entry = new PriceList(priceListItem).iterator().next();
+        assertEquals(MaterialGroups.ALL_MEAT, entry.getMaterial());
+        assertTrue(entry.getName().endsWith(", any meat"));
+        assertEquals((byte)0, entry.getItem().getMaterial());
+    }
+
     @Test
     void testOldPriceListsRenamedOnLoad() throws PriceList.NoPriceListOnBuyer {
         Creature buyer = factory.createNewBuyer(factory.createNewPlayer());
@@ -400,7 +751,7 @@ public class PriceListTest {
         PriceList.Entry second;
         List<PriceList.Entry> entries = new ArrayList<>(2);
         priceList.iterator().forEachRemaining(entries::add);
-        if (entries.get(0).template == 1) {
+        if (entries.get(0).getTemplateId() == 1) {
             first = entries.get(0);
             second = entries.get(1);
         } else {
@@ -408,8 +759,8 @@ public class PriceListTest {
             second = entries.get(0);
         }
 
-        assertEquals(1, first.minimumPurchase);
-        assertEquals(100, second.minimumPurchase);
+        assertEquals(1, first.getMinimumPurchase());
+        assertEquals(100, second.getMinimumPurchase());
     }
 
     @Test
@@ -422,7 +773,7 @@ public class PriceListTest {
         Item second;
         List<PriceList.Entry> entries = new ArrayList<>(2);
         priceList.iterator().forEachRemaining(entries::add);
-        if (entries.get(0).template == hatchetId) {
+        if (entries.get(0).getTemplateId() == hatchetId) {
             first = entries.get(0).getItem();
             second = entries.get(1).getItem();
         } else {
@@ -442,7 +793,7 @@ public class PriceListTest {
         PriceList.Entry second;
         List<PriceList.Entry> entries = new ArrayList<>(2);
         priceList.iterator().forEachRemaining(entries::add);
-        if (entries.get(0).template == 1) {
+        if (entries.get(0).getTemplateId() == 1) {
             first = entries.get(0);
             second = entries.get(1);
         } else {
@@ -461,7 +812,7 @@ public class PriceListTest {
         assertDoesNotThrow(() -> priceList.addItem(factory.getIsMetalId(), ItemMaterials.MATERIAL_IRON, 1.0f, 1, 100));
         assertDoesNotThrow(priceList::savePriceList);
 
-        assertEquals(100, priceList.iterator().next().minimumPurchase);
+        assertEquals(100, priceList.iterator().next().getMinimumPurchase());
     }
 
     @Test
@@ -559,6 +910,47 @@ public class PriceListTest {
         assertEquals(2, priceList.getItems().iterator().next().getPrice());
     }
 
+    @Test
+    void testItemKeptWhenOnlyPriceChanged() throws PriceList.PriceListFullException {
+        PriceList priceList = new PriceList(createPriceList("7,42,1.0,10"));
+        TempItem item = priceList.getItems().iterator().next();
+
+        priceList.iterator().next().updateItemDetails(1.0f, 20, 1);
+
+        assertSame(item, priceList.getItems().iterator().next());
+        assertEquals(20, item.getPrice());
+    }
+
+    @Test
+    void testItemReplacedWhenEntryChanged() throws PriceList.PriceListFullException {
+        PriceList priceList = new PriceList(createPriceList("7,42,1.0,10"));
+        TempItem item = priceList.getItems().iterator().next();
+
+        priceList.iterator().next().updateItemDetails(50.0f, 10, 1);
+
+        TempItem newItem = priceList.getItems().iterator().next();
+        assertNotSame(item, newItem);
+        assertEquals(50.0f, newItem.getQualityLevel());
+        assertThrows(NoSuchItemException.class, () -> Items.getItem(item.getWurmId()));
+    }
+
+    @Test
+    void testChangedAndRemovedItemsKeptUntilTradesEnd() throws PriceList.PriceListFullException {
+        PriceList priceList = new PriceList(createPriceList("7,42,1.0,10\n7,43,1.0,10"));
+        Item changed = priceList.asArray()[0].getItem();
+        Item removed = priceList.asArray()[1].getItem();
+        priceList.tradeStarted();
+
+        priceList.asArray()[0].updateItemDetails(50.0f, 10, 1);
+        priceList.removeItem(priceList.asArray()[1]);
+        assertDoesNotThrow(() -> Items.getItem(changed.getWurmId()));
+        assertDoesNotThrow(() -> Items.getItem(removed.getWurmId()));
+
+        priceList.tradeEnded();
+        assertThrows(NoSuchItemException.class, () -> Items.getItem(changed.getWurmId()));
+        assertThrows(NoSuchItemException.class, () -> Items.getItem(removed.getWurmId()));
+    }
+
     @Test
     void testPriceListSorting() throws PriceList.PriceListFullException, PriceList.PageNotAdded {
         String list =  ItemList.icecream + ",1,1.0,10\n" +
@@ -567,11 +959,11 @@ public class PriceListTest {
                        ItemList.acorn + ",1,1.0,10\n";
         PriceList priceList = new PriceList(createPriceList(list));
         PriceList.Entry[] unsortedArray = priceList.asArray();
-        assertEquals(ItemList.icecream, unsortedArray[0].template);
-        assertEquals(ItemList.hatchet, unsortedArray[1].template);
-        assertEquals(ItemList.hatchet, unsortedArray[2].template);
-        assertEquals(55.0f, unsortedArray[2].minQL);
-        assertEquals(ItemList.acorn, unsortedArray[3].template);
+        assertEquals(ItemList.icecream, unsortedArray[0].getTemplateId());
+        assertEquals(ItemList.hatchet, unsortedArray[1].getTemplateId());
+        assertEquals(ItemList.hatchet, unsortedArray[2].getTemplateId());
+        assertEquals(55.0f, unsortedArray[2].getQualityLevel());
+        assertEquals(ItemList.acorn, unsortedArray[3].getTemplateId());
 
         priceList.sortAndSave();
 
@@ -583,6 +975,26 @@ public class PriceListTest {
         }, priceList.asArray());
     }
 
+    @Test
+    void testLookupAfterSortingUsesMovedRow() throws Exception {
+        byte icecreamMaterial = ItemTemplateFactory.getInstance().getTemplate(ItemList.icecream).getMaterial();
+        byte acornMaterial = ItemTemplateFactory.getInstance().getTemplate(ItemList.acorn).getMaterial();
+        String list =  ItemList.icecream + "," + icecreamMaterial + ",1.0,10\n" +
+                       ItemList.acorn + "," + acornMaterial + ",1.0,20\n";
+        PriceList priceList = new PriceList(createPriceList(list));
+        Item icecream = factory.createNewItem(ItemList.icecream);
+        Item acorn = factory.createNewItem(ItemList.acorn);
+        assertEquals(10, priceList.getPrice(icecream));
+        int modifications = priceList.getModificationCount();
+
+        priceList.sortAndSave();
+
+        assertEquals(10, priceList.getPrice(icecream));
+        assertEquals(20, priceList.getPrice(acorn));
+        assertEquals(ItemList.acorn, priceList.getEntryFor(acorn).getTemplateId());
+        assertNotEquals(modifications, priceList.getModificationCount());
+    }
+
     @Test
     void testPriceListSortingByFullName() throws PriceList.PriceListFullException, PriceList.PageNotAdded {
         String list =  ItemList.anvilSmall + ",1,1.0,10\n" +
@@ -591,11 +1003,11 @@ public class PriceListTest {
                                ItemList.maulSmall + ",1,1.0,10\n";
         PriceList priceList = new PriceList(createPriceList(list));
         PriceList.Entry[] unsortedArray = priceList.asArray();
-        assertEquals(ItemList.anvilSmall, unsortedArray[0].template);
-        assertEquals(ItemList.hatchet, unsortedArray[1].template);
-        assertEquals(ItemList.hatchet, unsortedArray[2].template);
-        assertEquals(55.0f, unsortedArray[2].minQL);
-        assertEquals(ItemList.maulSmall, unsortedArray[3].template);
+        assertEquals(ItemList.anvilSmall, unsortedArray[0].getTemplateId());
+        assertEquals(ItemList.hatchet, unsortedArray[1].getTemplateId());
+        assertEquals(ItemList.hatchet, unsortedArray[2].getTemplateId());
+        assertEquals(55.0f, unsortedArray[2].getQualityLevel());
+        assertEquals(ItemList.maulSmall, unsortedArray[3].getTemplateId());
 
         priceList.sortAndSave();
 
@@ -607,6 +1019,34 @@ public class PriceListTest {
         }, priceList.asArray());
     }
 
+    @Test
+    void testPriceListSortingWithUnknownTemplate() throws PriceList.PriceListFullException, PriceList.PageNotAdded {
+        String list =  ItemList.hatchet + ",1,1.0,10\n" +
+                               "32000,1,1.0,10\n" +
+                               ItemList.acorn + ",1,1.0,10\n";
+        PriceList priceList = new PriceList(createPriceList(list));
+        PriceList.Entry[] unsortedArray = priceList.asArray();
+
+        assertDoesNotThrow(priceList::sortAndSave);
+
+        assertEquals("UnknownItem", unsortedArray[1].getName());
+        assertArrayEquals(new PriceList.Entry[] {
+                unsortedArray[1],
+                unsortedArray[2],
+                unsortedArray[0]
+        }, priceList.asArray());
+    }
+
+    @Test
+    void testEntryNameUpdatedWithTemplate() throws PriceList.PriceListFullException {
+        PriceList priceList = new PriceList(createPriceList(ItemList.hatchet + ",1,1.0,10"));
+        PriceList.Entry entry = priceList.iterator().next();
+        assertEquals("hatchet", entry.getName());
+
+        entry.updateItem(ItemList.acorn, (byte)0, 1.0f, 10, 1);
+        assertNotEquals("hatchet", entry.getName());
+    }
+
     private Item createOldPriceList() {
         Item oldPriceList = factory.createNewItem(ItemList.papyrusSheet);
         oldPriceList.setDescription("Buy List");
@@ -728,6 +1168,161 @@ public class PriceListTest {
         assertNotNull(priceListItem.getFirstContainedItem().getInscription());
     }
 
+    private Item getPage(Item priceListItem, int number) {
+        return priceListItem.getItems().stream().filter(page -> page.getDescription().equals("Buy List Page " + number)).findAny().orElseThrow(NoSuchElementException::new);
+    }
+
+    private String getInscription(Item page) {
+        return Objects.requireNonNull(page.getInscription()).getInscription();
+    }
+
+    @Test
+    void testPagesNumberedInOrder() throws NoSuchTemplateException, FailedException, IOException, PriceList.PriceListFullException, PriceList.PageNotAdded {
+        Item priceListItem = PriceList.getNewBuyList();
+        PriceList priceList = new PriceList(priceListItem);
+        for (int i = 1; i <= 150; i++)
+            priceList.addItem(i, (byte)1, 1.0f, 10);
+        priceList.savePriceList();
+
+        assertEquals(3, priceListItem.getItemCount());
+        PriceList.Entry[] entries = new PriceList(priceListItem).asArray();
+        assertEquals(150, entries.length);
+        for (int i = 0; i < entries.length; i++)
+            assertEquals(i + 1, entries[i].getTemplateId());
+    }
+
+    @Test
+    void testOnlyChangedPageWritten() throws NoSuchTemplateException, FailedException, IOException, PriceList.PriceListFullException, PriceList.PageNotAdded {
+        Item priceListItem = PriceList.getNewBuyList();
+        PriceList priceList = new PriceList(priceListItem);
+        for (int i = 1; i <= 150; i++)
+            priceList.addItem(i, (byte)1, 1.0f, 10);
+        priceList.savePriceList();
+        String page1 = getInscription(getPage(priceListItem, 1));
+        String page2 = getInscription(getPage(priceListItem, 2));
+        String page3 = getInscription(getPage(priceListItem, 3));
+
+        priceList = new PriceList(priceListItem);
+        PriceList.Entry last = priceList.asArray()[149];
+        last.updateItemDetails(last.getQualityLevel(), 20, 1);
+        priceList.savePriceList();
+
+        assertSame(page1, getInscription(getPage(priceListItem, 1)));
+        assertSame(page2, getInscription(getPage(priceListItem, 2)));
+        assertNotEquals(page3, getInscription(getPage(priceListItem, 3)));
+        assertEquals(20, new PriceList(priceListItem).asArray()[149].getPrice());
+    }
+
+    @Test
+    void testBulkEditsOnlyWriteChangedPages() throws PriceList.PriceListFullException, PriceList.PageNotAdded, NoSuchTemplateException, FailedException, IOException {
+        Item priceListItem = PriceList.getNewBuyList();
+        PriceList priceList = new PriceList(priceListItem);
+        for (int i = 1; i <= 150; i++)
+            priceList.addItem(i, (byte)1, 1.0f, 10);
+        priceList.savePriceList();
+        String page2 = getInscription(getPage(priceListItem, 2));
+        String page3 = getInscription(getPage(priceListItem, 3));
+
+        priceList = new PriceList(priceListItem);
+        for (PriceList.Entry entry : priceList) {
+            if (entry.getTemplateId() <= 10)
+                entry.updateItemDetails(entry.getQualityLevel(), 15, 1);
+        }
+        priceList.savePriceList();
+
+        assertSame(page2, getInscription(getPage(priceListItem, 2)));
+        assertSame(page3, getInscription(getPage(priceListItem, 3)));
+        assertEquals(10, new PriceList(priceListItem).stream().filter(entry -> entry.getPrice() == 15).count());
+    }
+
+    @Test
+    void testUnchangedUpdateDoesNotWritePage() throws PriceList.PriceListFullException, PriceList.PageNotAdded, NoSuchTemplateException, IOException {
+        Item priceListItem = PriceList.getNewBuyList();
+        PriceList priceList = new PriceList(priceListItem);
+        priceList.addItem(1, (byte)1, 1.0f, 10);
+        priceList.savePriceList();
+        String inscription = getInscription(priceListItem.getFirstContainedItem());
+
+        priceList = new PriceList(priceListItem);
+        PriceList.Entry entry = priceList.iterator().next();
+        entry.updateItemDetails(entry.getQualityLevel(), entry.getPrice(), entry.getMinimumPurchase());
+        priceList.savePriceList();
+
+        assertSame(inscription, getInscription(priceListItem.getFirstContainedItem()));
+    }
+
+    @Test
+    void testAddedItemUsesSpaceOnEarlierPageWhenBookFull() throws NoSuchTemplateException, FailedException, IOException, PriceList.PriceListFullException, PriceList.PageNotAdded {
+        Item priceListItem = PriceList.getNewBuyList();
+        PriceList priceList = new PriceList(priceListItem);
+        int templateId = 100;
+        while (true) {
+            try {
+                templateId++;
+                priceList.addItem(templateId, (byte)1);
+            } catch (PriceList.PriceListFullException e) {
+                break;
+            }
+        }
+        priceList.savePriceList();
+        String lastPage = getInscription(getPage(priceListItem, 10));
+
+        priceList = new PriceList(priceListItem);
+        PriceList.Entry first = priceList.iterator().next();
+        priceList.removeItem(first);
+        priceList.addItem(templateId, (byte)1);
+        priceList.savePriceList();
+
+        assertEquals(10, priceListItem.getItemCount());
+        assertSame(lastPage, getInscription(getPage(priceListItem, 10)));
+        int finalTemplateId = templateId;
+        assertTrue(new PriceList(priceListItem).stream().anyMatch(entry -> entry.getTemplateId() == finalTemplateId));
+    }
+
+    @Test
+    void testOrderKeptWhenSpaceFreedOnEarlierPage() throws NoSuchTemplateException, FailedException, IOException, PriceList.PriceListFullException, PriceList.PageNotAdded {
+        Item priceListItem = PriceList.getNewBuyList();
+        PriceList priceList = new PriceList(priceListItem);
+        for (int i = 1; i <= 150; i++)
+            priceList.addItem(i, (byte)1, 1.0f, 10);
+        priceList.savePriceList();
+        String page3 = getInscription(getPage(priceListItem, 3));
+
+        priceList = new PriceList(priceListItem);
+        PriceList.Entry[] removing = priceList.asArray();
+        for (int i = removing.length - 1; i >= 0; --i) {
+            if (removing[i].getTemplateId() <= 20)
+                priceList.removeItem(removing[i]);
+        }
+        priceList.savePriceList();
+
+        assertSame(page3, getInscription(getPage(priceListItem, 3)));
+        PriceList.Entry[] entries = new PriceList(priceListItem).asArray();
+        assertEquals(130, entries.length);
+        for (int i = 0; i < entries.length; i++)
+            assertEquals(i + 21, entries[i].getTemplateId());
+    }
+
+    @Test
+    void testOrderKeptWhenUpdateOverflowsPage() throws NoSuchTemplateException, FailedException, IOException, PriceList.PriceListFullException, PriceList.PageNotAdded {
+        Item priceListItem = PriceList.getNewBuyList();
+        PriceList priceList = new PriceList(priceListItem);
+        for (int i = 1; i <= 150; i++)
+            priceList.addItem(i, (byte)1, 1.0f, 10);
+        priceList.savePriceList();
+
+        priceList = new PriceList(priceListItem);
+        PriceTiers tiers = PriceTiers.parse("10:20,20:30,30:40,40:50,50:60,60:70,70:80,80:90,90:100");
+        priceList.asArray()[4].updateItemDetails(1.0f, 10, 1, tiers);
+        priceList.savePriceList();
+
+        PriceList.Entry[] entries = new PriceList(priceListItem).asArray();
+        assertEquals(150, entries.length);
+        for (int i = 0; i < entries.length; i++)
+            assertEquals(i + 1, entries[i].getTemplateId());
+        assertEquals(tiers, entries[4].getTiers());
+    }
+
     @Test
     void testPageNotInBook() throws NoSuchMethodException, InvocationTargetException, IllegalAccessException, PriceList.NoPriceListOnBuyer {
         Creature buyer = factory.createNewBuyer(factory.createNewPlayer());
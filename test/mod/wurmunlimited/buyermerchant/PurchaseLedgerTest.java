@@ -0,0 +1,156 @@
+package mod.wurmunlimited.buyermerchant;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PurchaseLedgerTest {
+
+    private static final LocalDate dayOne = LocalDate.of(2020, 1, 1);
+    private static final LocalDate dayTwo = dayOne.plusDays(1);
+    private Path directory;
+
+    private static long at(LocalDate day) {
+        return day.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+        PurchaseLedger.close();
+        directory = Files.createTempDirectory("buyer_ledger");
+        PurchaseLedger.directory = directory;
+    }
+
+    @AfterEach
+    void tearDown() {
+        PurchaseLedger.close();
+    }
+
+    @Test
+    void testRecordsReadBack() throws IOException {
+        PurchaseLedger.record(at(dayOne) + 10, 1, 2, 3, 4, (byte)5, 6.5f, 7, 8);
+        PurchaseLedger.close();
+
+        List<PurchaseRecord> records = new ArrayList<>();
+        new PurchaseLedgerReader(directory, null, null).forEach(records::add);
+        assertEquals(1, records.size());
+        PurchaseRecord record = records.get(0);
+        assertEquals(at(dayOne) + 10, record.timestamp);
+        assertEquals(1, record.shopId);
+        assertEquals(2, record.ownerId);
+        assertEquals(3, record.sellerId);
+        assertEquals(4, record.templateId);
+        assertEquals(5, record.material);
+        assertEquals(6.5f, record.ql);
+        assertEquals(7, record.weight);
+        assertEquals(8, record.price);
+    }
+
+    @Test
+    void testOneFilePerDay() throws IOException {
+        PurchaseLedger.record(at(dayOne), 1, 2, 3, 4, (byte)5, 6, 7, 8);
+        PurchaseLedger.record(at(dayTwo), 1, 2, 3, 4, (byte)5, 6, 7, 8);
+        PurchaseLedger.close();
+
+        assertTrue(Files.exists(PurchaseLedger.getSegment(directory, dayOne)));
+        assertTrue(Files.exists(PurchaseLedger.getSegment(directory, dayTwo)));
+        assertEquals(1, new PurchaseLedgerReader(directory, dayTwo, null).totalsByBuyer().get(1L).getCount());
+        assertEquals(1, new PurchaseLedgerReader(directory, null, dayOne).totalsByBuyer().get(1L).getCount());
+        assertEquals(2, new PurchaseLedgerReader(directory, dayOne, dayTwo).totalsByBuyer().get(1L).getCount());
+    }
+
+    @Test
+    void testCloseWaitsForRetiredFiles() {
+        AtomicBoolean finished = new AtomicBoolean(false);
+        PurchaseLedger.flusher.execute(() -> {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            finished.set(true);
+        });
+        PurchaseLedger.close();
+
+        assertTrue(finished.get());
+    }
+
+    @Test
+    void testReopenedFileAppendedTo() throws IOException {
+        PurchaseLedger.record(at(dayOne), 1, 2, 3, 4, (byte)5, 6, 7, 8);
+        PurchaseLedger.close();
+        PurchaseLedger.record(at(dayOne) + 1, 1, 2, 3, 4, (byte)5, 6, 7, 8);
+        PurchaseLedger.close();
+
+        assertEquals(2, new PurchaseLedgerReader(directory, null, null).totalsByBuyer().get(1L).getCount());
+    }
+
+    @Test
+    void testFileGrownWhenFull() throws IOException {
+        int records = 20000;
+        for (int i = 0; i < records; ++i) {
+            PurchaseLedger.record(at(dayOne) + i, 1, 2, 3, 4, (byte)5, 6, 7, 8);
+        }
+        PurchaseLedger.close();
+
+        assertEquals(records, new PurchaseLedgerReader(directory, null, null).totalsByBuyer().get(1L).getCount());
+    }
+
+    @Test
+    void testFileGrownInSteps() throws IOException {
+        Path segment = PurchaseLedger.getSegment(directory, dayOne);
+        long step = (long)PurchaseLedger.RECORDS_PER_STEP * PurchaseLedger.RECORD_SIZE;
+        PurchaseLedger.record(at(dayOne), 1, 2, 3, 4, (byte)5, 6, 7, 8);
+        PurchaseLedger.close();
+        assertEquals(PurchaseLedger.HEADER_SIZE + step, Files.size(segment));
+
+        for (int i = 0; i < PurchaseLedger.RECORDS_PER_STEP; ++i) {
+            PurchaseLedger.record(at(dayOne) + i, 1, 2, 3, 4, (byte)5, 6, 7, 8);
+        }
+        PurchaseLedger.close();
+        assertEquals(PurchaseLedger.HEADER_SIZE + 2 * step, Files.size(segment));
+    }
+
+    @Test
+    void testTotalsByBuyerAndTemplate() throws IOException {
+        PurchaseLedger.record(at(dayOne), 1, 10, 20, 100, (byte)5, 50, 1000, 15);
+        PurchaseLedger.record(at(dayOne), 1, 10, 21, 101, (byte)5, 50, 2000, 25);
+        PurchaseLedger.record(at(dayTwo), 2, 11, 20, 100, (byte)5, 50, 3000, 35);
+        PurchaseLedger.close();
+        PurchaseLedgerReader reader = new PurchaseLedgerReader(directory, null, null);
+
+        Map<Long, PurchaseTotals> byBuyer = reader.totalsByBuyer();
+        assertEquals(2, byBuyer.size());
+        assertEquals(2, byBuyer.get(1L).getCount());
+        assertEquals(3000, byBuyer.get(1L).getWeight());
+        assertEquals(40, byBuyer.get(1L).getPrice());
+        assertEquals(1, byBuyer.get(2L).getCount());
+        assertEquals(35, byBuyer.get(2L).getPrice());
+
+        Map<Integer, PurchaseTotals> byTemplate = reader.totalsByTemplate();
+        assertEquals(2, byTemplate.size());
+        assertEquals(2, byTemplate.get(100).getCount());
+        assertEquals(4000, byTemplate.get(100).getWeight());
+        assertEquals(50, byTemplate.get(100).getPrice());
+        assertEquals(1, byTemplate.get(101).getCount());
+    }
+
+    @Test
+    void testFileNotALedgerRejected() throws IOException {
+        Files.write(PurchaseLedger.getSegment(directory, dayOne), new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16 });
+
+        assertThrows(IOException.class, () -> new PurchaseLedgerReader(directory, null, null).totalsByBuyer());
+    }
+}